@@ -0,0 +1,81 @@
+package Expensetracker.bench;
+
+import Expensetracker.index.Aggregation;
+import Expensetracker.index.CategoryTotals;
+import Expensetracker.index.TimeRollups;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.storage.CsvLedgerReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dashboard: category totals, the time rollups, grouping by category x
+ * month x type on one thread and on the fork-join pool, and the line
+ * chart's bucket axis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class AggregateBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private TransactionStore st;
+    private TimeRollups rollups;
+
+    @Setup
+    public void setUp() throws IOException {
+        st = CsvLedgerReader.readParallel(Ledgers.csv(rows)).store;
+        rollups = TimeRollups.of(st);
+    }
+
+    @Benchmark
+    public long categoryTotals() {
+        return CategoryTotals.of(st).totalDebitPaise();
+    }
+
+    @Benchmark
+    public int rollups() {
+        return TimeRollups.of(st).categoryCount(TimeRollups.Granularity.DAY);
+    }
+
+    @Benchmark
+    public int groupSequential() {
+        return Aggregation.sequential(st, TimeRollups.Granularity.MONTH, null).size();
+    }
+
+    @Benchmark
+    public int groupParallel() {
+        return Aggregation.run(st, TimeRollups.Granularity.MONTH, null).size();
+    }
+
+    @Benchmark
+    public long chartBuckets() {
+        long n = 0;
+        for (TimeRollups.Granularity g : TimeRollups.Granularity.values()) {
+            TreeSet<Integer> buckets = new TreeSet<>();
+            for (int c = 0; c < rollups.categoryCount(g); c++)
+                buckets.addAll(rollups.series(g, c).keySet());
+            for (int b : buckets)
+                n += TimeRollups.label(g, b).length();
+        }
+        return n;
+    }
+}
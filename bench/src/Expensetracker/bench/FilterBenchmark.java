@@ -0,0 +1,113 @@
+package Expensetracker.bench;
+
+import Expensetracker.index.FilterEngine;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.storage.CsvLedgerReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filter bar: building the indexes, a query per category, date and
+ * amount ranges, a note typed a letter at a time, and the per-row
+ * predicate scan the table did before the indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class FilterBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private TransactionStore st;
+    private FilterEngine engine;
+
+    // one per category; none narrows the one before, so each is a fresh search
+    private FilterEngine.Query[] byCategory;
+    private FilterEngine.Query[] ranges;
+    // what the filter bar sees while "swiggy" is typed into the note box
+    private FilterEngine.Query[] typing;
+    private FilterEngine.Query mixed;
+
+    @Setup
+    public void setUp() throws IOException {
+        st = CsvLedgerReader.readParallel(Ledgers.csv(rows)).store;
+        engine = new FilterEngine(st);
+
+        int lastDay = (int) LedgerGenerator.END.toEpochDay();
+        int food = Symbols.CATEGORIES.find("Food");
+
+        byCategory = new FilterEngine.Query[Symbols.CATEGORIES.size()];
+        for (int c = 0; c < byCategory.length; c++)
+            byCategory[c] = new FilterEngine.Query(c, null,
+                    Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        ranges = new FilterEngine.Query[] {
+                new FilterEngine.Query(FilterEngine.Query.ANY_CATEGORY, null,
+                        lastDay - 364, lastDay, Long.MIN_VALUE, Long.MAX_VALUE),
+                new FilterEngine.Query(FilterEngine.Query.ANY_CATEGORY, null,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE, 50_000, 200_000),
+                new FilterEngine.Query(food, null, lastDay - 89, lastDay, 10_000, Long.MAX_VALUE),
+        };
+
+        String word = "swiggy";
+        typing = new FilterEngine.Query[word.length()];
+        for (int k = 0; k < typing.length; k++)
+            typing[k] = new FilterEngine.Query(FilterEngine.Query.ANY_CATEGORY, word.substring(0, k + 1),
+                    Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+        mixed = new FilterEngine.Query(food, "swig", lastDay - 364, lastDay, 10_000, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int indexBuild() {
+        return new FilterEngine(st).run(FilterEngine.Query.all()).length;
+    }
+
+    @Benchmark
+    public long category() {
+        return runAll(byCategory);
+    }
+
+    @Benchmark
+    public long range() {
+        return runAll(ranges);
+    }
+
+    @Benchmark
+    public long noteTyping() {
+        return runAll(typing);
+    }
+
+    @Benchmark
+    public long predicateScan() {
+        long n = 0;
+        for (int i = 0; i < st.size(); i++)
+            if (engine.matches(mixed, i))
+                n++;
+        return n;
+    }
+
+    private long runAll(FilterEngine.Query[] queries) {
+        long n = 0;
+        for (FilterEngine.Query q : queries)
+            n += engine.run(q).length;
+        return n;
+    }
+}
@@ -0,0 +1,94 @@
+package Expensetracker.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic ledgers in the expenses.csv layout, for benchmarks.
+ *
+ * Rows are in date order over {@link #YEARS} years ending at a fixed date,
+ * about one in ten is a credit, and notes are payee names with an optional
+ * reference number so note searches hit a realistic share of rows. The
+ * same size and seed always give the same file.
+ *
+ * <pre>
+ *   LedgerGenerator &lt;out.csv&gt; &lt;rows&gt; [seed]
+ * </pre>
+ */
+public class LedgerGenerator {
+
+    public static final long DEFAULT_SEED = 42;
+
+    static final int YEARS = 8;
+    static final LocalDate END = LocalDate.of(2024, 12, 31);
+
+    private static final String[] CATEGORIES = {
+            "Food", "Education", "Transport", "Shopping", "Bills", "General"
+    };
+    private static final String[] PAYEES = {
+            "Swiggy", "Zomato", "BigBasket", "Uber", "Ola", "IRCTC", "Amazon",
+            "Flipkart", "Myntra", "BESCOM", "Airtel", "Jio", "Udemy", "Coursera",
+            "DMart", "Cafe Coffee Day", "Indian Oil", "Apollo Pharmacy",
+            "Salary", "Refund", "Rent", "Tuition", "Gym", "Netflix"
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: LedgerGenerator <out.csv> <rows> [seed]");
+            System.exit(2);
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        Path out = Paths.get(args[0]);
+
+        long t0 = System.nanoTime();
+        generate(out, Integer.parseInt(args[1]), seed);
+        System.out.printf("Wrote %s rows to %s (%d bytes) in %.1f ms%n",
+                args[1], out, Files.size(out), (System.nanoTime() - t0) / 1e6);
+    }
+
+    public static void generate(Path csv, int rows, long seed) throws IOException {
+
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long firstDay = END.minusYears(YEARS).toEpochDay();
+        long days = END.toEpochDay() - firstDay + 1;
+
+        StringBuilder line = new StringBuilder(96);
+        try (BufferedWriter w = Files.newBufferedWriter(csv)) {
+            w.write("BUDGET,50000.0\n");
+            w.write("Date,Category,Type,Method,Amount,Note\n");
+
+            for (int i = 0; i < rows; i++) {
+                // spread rows evenly over the range, so they stay in date order
+                long day = firstDay + (long) i * days / Math.max(rows, 1);
+                boolean credit = rnd.nextInt(10) == 0;
+
+                // mostly small amounts, a long tail of large ones
+                long paise = credit
+                        ? 100_000 + rnd.nextLong(5_000_000)
+                        : 1_000 + (long) (Math.pow(rnd.nextDouble(), 3) * 2_000_000);
+
+                line.setLength(0);
+                line.append(LocalDate.ofEpochDay(day)).append(',')
+                        .append(CATEGORIES[rnd.nextInt(CATEGORIES.length)]).append(',')
+                        .append(credit ? "Credit" : "Debit").append(',')
+                        .append(rnd.nextInt(3) == 0 ? "Cash" : "UPI").append(',')
+                        .append(paise / 100).append('.');
+                long frac = paise % 100;
+                if (frac < 10)
+                    line.append('0');
+                line.append(frac).append(',')
+                        .append(PAYEES[rnd.nextInt(PAYEES.length)]);
+                if (rnd.nextBoolean())
+                    line.append(" ref ").append(rnd.nextInt(1_000_000));
+                line.append('\n');
+
+                w.append(line);
+            }
+        }
+    }
+}
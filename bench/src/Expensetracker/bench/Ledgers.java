@@ -0,0 +1,44 @@
+package Expensetracker.bench;
+
+import Expensetracker.storage.CsvLedgerReader;
+import Expensetracker.storage.LedgerSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The ledgers the benchmarks read, from {@link LedgerGenerator}. Each size
+ * is generated once into {@code -Dexpensetracker.bench.dir} and reused by
+ * later runs.
+ */
+final class Ledgers {
+
+    static final Path DIR = Paths.get(System.getProperty("expensetracker.bench.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "expensetracker-bench").toString()));
+
+    private Ledgers() {
+    }
+
+    static Path csv(int rows) throws IOException {
+        Files.createDirectories(DIR);
+        Path csv = DIR.resolve("ledger-" + rows + ".csv");
+        if (!Files.exists(csv))
+            LedgerGenerator.generate(csv, rows, LedgerGenerator.DEFAULT_SEED);
+        return csv;
+    }
+
+    /** Writes the snapshot of {@code csv}, as loaded into {@code loaded}. */
+    static Path snapshot(Path csv, CsvLedgerReader.Result loaded) throws IOException {
+        Path snapshot = DIR.resolve(csv.getFileName() + ".snapshot");
+        LedgerSnapshot.write(snapshot, csv, loaded.hasBudget, loaded.budget, loaded.store, loaded.balances);
+        return snapshot;
+    }
+
+    /** A scratch file next to the ledgers, for writes. */
+    static Path scratch(String name) throws IOException {
+        Files.createDirectories(DIR);
+        return DIR.resolve(name);
+    }
+}
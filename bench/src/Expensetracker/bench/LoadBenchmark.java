@@ -0,0 +1,60 @@
+package Expensetracker.bench;
+
+import Expensetracker.storage.CsvLedgerReader;
+import Expensetracker.storage.LedgerSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup: parsing expenses.csv, on the fork-join pool and on one thread,
+ * and loading the binary snapshot instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class LoadBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private Path csv;
+    private Path snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        csv = Ledgers.csv(rows);
+        snapshot = Ledgers.snapshot(csv, CsvLedgerReader.readSequential(csv));
+    }
+
+    // not read(): that only splits files of 8 MB and up, and 10K rows is less
+    @Benchmark
+    public int csvParallel() throws IOException {
+        return CsvLedgerReader.readParallel(csv).store.size();
+    }
+
+    @Benchmark
+    public int csvSequential() throws IOException {
+        return CsvLedgerReader.readSequential(csv).store.size();
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        return LedgerSnapshot.read(snapshot, csv).store.size();
+    }
+}
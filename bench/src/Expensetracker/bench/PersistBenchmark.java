@@ -0,0 +1,66 @@
+package Expensetracker.bench;
+
+import Expensetracker.storage.CsvLedgerReader;
+import Expensetracker.storage.CsvLedgerWriter;
+import Expensetracker.storage.LedgerSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** Checkpointing: rewriting expenses.csv from memory, and writing the snapshot. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PersistBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private Path csv;
+    private CsvLedgerReader.Result loaded;
+    private Path csvOut;
+    private Path snapshotOut;
+
+    @Setup
+    public void setUp() throws IOException {
+        csv = Ledgers.csv(rows);
+        loaded = CsvLedgerReader.readParallel(csv);
+        csvOut = Ledgers.scratch("persist-" + rows + ".csv");
+        snapshotOut = Ledgers.scratch("persist-" + rows + ".snapshot");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvOut);
+        Files.deleteIfExists(snapshotOut);
+    }
+
+    @Benchmark
+    public long csv() throws IOException {
+        CsvLedgerWriter.write(csvOut, loaded.budget, loaded.store);
+        return Files.size(csvOut);
+    }
+
+    @Benchmark
+    public long snapshot() throws IOException {
+        LedgerSnapshot.write(snapshotOut, csv, loaded.hasBudget, loaded.budget, loaded.store, loaded.balances);
+        return Files.size(snapshotOut);
+    }
+}
@@ -1,6 +1,30 @@
+import Expensetracker.index.Aggregation;
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.index.CategoryTotals;
+import Expensetracker.index.FilterEngine;
+import Expensetracker.index.TimeRollups;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.storage.CsvLedgerReader;
+import Expensetracker.storage.Ledger;
+import Expensetracker.storage.LedgerCompactor;
+import Expensetracker.storage.LedgerSink;
+import Expensetracker.storage.SqliteLedger;
+import Expensetracker.storage.StatementImport;
+import Expensetracker.storage.TransactionJournal;
+import Expensetracker.storage.WriteBehindJournal;
+import Expensetracker.ui.Dashboard;
+import Expensetracker.ui.FilterScheduler;
+import Expensetracker.ui.FilteredRows;
+import Expensetracker.ui.PagedRows;
+import Expensetracker.ui.StoreBackedList;
+import Expensetracker.util.DBConnection;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.*;
-import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -9,26 +33,48 @@ import javafx.scene.control.*;
 
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
 import javafx.stage.*;
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.file.*;
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.temporal.WeekFields;
 import java.util.*;
 public class ExpenseTrackerApp extends Application {
     private static final String CSV_PATH = "C:\\Users\\shiva\\OneDrive\\Documents\\Desktop\\Expense_tracker_app\\expenses.csv";
+    private static final String SNAPSHOT_PATH = "C:\\Users\\shiva\\OneDrive\\Documents\\Desktop\\Expense_tracker_app\\expenses.snapshot";
+    private static final String JOURNAL_PATH = "C:\\Users\\shiva\\OneDrive\\Documents\\Desktop\\Expense_tracker_app\\expenses.journal";
+
+    // -Dexpensetracker.table=paged reads the table from expenses.db a page at a time
+    // instead of loading every row, for ledgers too big for the heap; implies sqlite
+    private static final boolean PAGED = "paged".equalsIgnoreCase(System.getProperty("expensetracker.table"));
+
+    // -Dexpensetracker.storage=sqlite keeps the ledger in expenses.db instead of the CSV
+    private static final boolean USE_SQLITE = PAGED
+            || "sqlite".equalsIgnoreCase(System.getProperty("expensetracker.storage"));
+
+    // deleted rows are dropped from the store once there are this many, and a quarter of it
+    private static final int COMPACT_AFTER = 4096;
+
+    // -Dexpensetracker.metrics=true publishes these (and the storage timers) over JMX
+    private static final Timer IMPORT_PARSE = Metrics.timer("import.parse");
+    private static final Timer IMPORT_APPLY = Metrics.timer("import.apply");
 
     // ---------------- DATA ----------------
-    private final ObservableList<Transaction> transactions = FXCollections.observableArrayList();
+    private final StoreBackedList transactions = new StoreBackedList(new TransactionStore());
 
-    private final ObservableList<String> categories = FXCollections.observableArrayList(
-            "Food", "Education", "Transport",
-            "Shopping", "Bills", "General");
+    // Mirrors Symbols.CATEGORIES, see syncCategories()
+    private final ObservableList<String> categories = FXCollections.observableArrayList();
 
     private final Map<String, String> categoryMemory = new HashMap<>();
 
+    // Kept current by the store on every add/delete, see indexStore()
+    private BalanceCheckpoints balances;
+    private CategoryTotals categoryTotals;
+    private TimeRollups timeRollups;
+    private FilterEngine filterEngine;
+
     // ---------------- UI ----------------
     private Label balanceLabel;
     private TableView<Transaction> table;
@@ -40,18 +86,42 @@ public class ExpenseTrackerApp extends Application {
 
     // ---------------- STATE ----------------
     private double totalbudget = 0;
-    private double balance;
     private boolean budgetSet = false;
+    private TransactionJournal journal;
+    private SqliteLedger database;
+    private WriteBehindJournal journalWriter;
+    private LedgerCompactor compactor;
 
     @Override
     public void start(Stage stage) {
-        loadBudgetFromCSV();
-        loadTransactionsFromCSV();
-        recalculateBalanceFromTransactions();
+        if (PAGED) {
+            try {
+                openPagedDatabase();
+            } catch (IOException | SQLException e) {
+                e.printStackTrace();
+                alert("Database Error", e.getMessage());
+                Platform.exit();
+                return;
+            }
+        } else if (USE_SQLITE) {
+            loadTransactionsFromDatabase();
+            indexStore();
+        } else {
+            loadLedger();
+            indexStore();
+            openJournal();
+        }
+        syncCategories();
 
-        filteredTransactions = new FilteredList<>(transactions, p -> true);
         table = createTable();
-        table.setItems(filteredTransactions);
+        if (PAGED) {
+            table.setItems(pagedTransactions);
+            table.setSortPolicy(this::sortPaged);
+        } else {
+            filteredTransactions = new FilteredRows(transactions, filterEngine);
+            filterScheduler = new FilterScheduler(transactions.store(), filterEngine, filteredTransactions);
+            table.setItems(filteredTransactions);
+        }
 
         BorderPane root = new BorderPane();
         VBox topArea = new VBox(5);
@@ -69,100 +139,241 @@ public class ExpenseTrackerApp extends Application {
         stage.show();
     }
 
-    private void writeCSVFromMemory() {
-
-        try (PrintWriter pw = new PrintWriter(new FileWriter(CSV_PATH))) {
-
-            // ✅ Write budget ONCE
-            pw.println("BUDGET," + totalbudget);
-
-            // Header
-            pw.println("Date,Category,Type,Method,Amount,Note");
-
-            // All transactions
-            for (Transaction t : transactions) {
-                pw.println(
-                        t.date + "," +
-                                t.category + "," +
-                                t.type + "," +
-                                t.method + "," +
-                                t.amount + "," +
-                                t.note.replace(",", " "));
+    @Override
+    public void stop() {
+        if (filterScheduler != null)
+            filterScheduler.shutdown();
+        if (pagedTransactions != null)
+            pagedTransactions.shutdown();
+        try {
+            // a running background checkpoint still needs the writer
+            if (compactor != null)
+                compactor.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (journalWriter != null) {
+                journalWriter.close();
             }
-
         } catch (IOException e) {
             e.printStackTrace();
         }
+        checkpoint();
+        try {
+            LedgerSink sink = USE_SQLITE ? database : journal;
+            if (sink != null)
+                sink.close();
+            if (USE_SQLITE)
+                DBConnection.shared().close();
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
+        }
     }
 
-    private void loadTransactionsFromCSV() {
-
-        File file = new File(CSV_PATH);
-        if (!file.exists())
-            return;
+    // Builds the aggregates and indexes once from the loaded rows; from here on the store
+    // keeps them up to date as apply(), deletes and journal replay change it
+    private void indexStore() {
+        TransactionStore st = transactions.store();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+        // the loader already has these unless it came up empty
+        if (balances == null)
+            balances = BalanceCheckpoints.of(st);
+        st.addListener(balances);
 
-            String line;
-            br.readLine();
+        categoryTotals = CategoryTotals.of(st);
+        st.addListener(categoryTotals);
 
-            br.readLine(); // skip header
+        timeRollups = TimeRollups.of(st);
+        st.addListener(timeRollups);
 
-            while ((line = br.readLine()) != null) {
-                String[] p = line.split(",");
+        filterEngine = new FilterEngine(st);
+        st.addListener(filterEngine);
+    }
 
-                Transaction t = new Transaction(
-                        LocalDate.parse(p[0]),
-                        p[1],
-                        p[2],
-                        p[3],
-                        Double.parseDouble(p[4]),
-                        p[5]);
+    // Paged table: the totals and rollups start from daily sums the database works
+    // out instead of from loaded rows; from here on this session's adds (the only
+    // rows in the store) and deletePagedRows() keep them up to date
+    private void indexPages() throws SQLException {
+        Aggregation.Groups days = database.dailyTotals();
+        categoryTotals = new CategoryTotals();
+        categoryTotals.add(days);
+        timeRollups = new TimeRollups();
+        timeRollups.add(days);
+
+        TransactionStore st = transactions.store();
+        st.addListener(categoryTotals);
+        st.addListener(timeRollups);
+    }
 
-                transactions.add(t);
+    // Categories come from the shared symbol table, so every new value seen by
+    // the loaders, an import or a manual add shows up in the pickers
+    private void syncCategories() {
+        categories.setAll(Symbols.CATEGORIES.values());
 
-            }
+        Symbols.CATEGORIES.addListener(cat -> {
+            if (Platform.isFxApplicationThread())
+                addCategory(cat);
+            else
+                Platform.runLater(() -> addCategory(cat));
+        });
+    }
 
-            updateBalance();
+    private void addCategory(String cat) {
+        categories.add(cat);
+        if (categoryFilter != null)
+            categoryFilter.getItems().add(cat);
+    }
 
-        } catch (Exception e) {
+    private void openJournal() {
+        try {
+            journal = TransactionJournal.open(Paths.get(JOURNAL_PATH), Paths.get(CSV_PATH),
+                    new TransactionJournal.Listener() {
+                        @Override
+                        public void onBudget(double budget) {
+                            totalbudget = budget;
+                            budgetSet = true;
+                        }
+
+                        @Override
+                        public void onAdd(Transaction t) {
+                            transactions.add(t);
+                        }
+
+                        @Override
+                        public void onRemove(long[] ids) {
+                            transactions.removeIds(ids);
+                        }
+
+                        @Override
+                        public void onDelete(int index) {
+                            transactions.removeRows(new int[]{transactions.store().liveRow(index)});
+                        }
+
+                        @Override
+                        public void onCompact() {
+                            transactions.compact();
+                            transactions.store().renumberIds();
+                        }
+                    });
+            startWriter(journal);
+
+            compactor = new LedgerCompactor(Paths.get(CSV_PATH), Paths.get(SNAPSHOT_PATH), journal,
+                    journalWriter, e -> {
+                        e.printStackTrace();
+                        Platform.runLater(() -> alert("Save Error", e.getMessage()));
+                    });
+            compactIfDue();
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void recalculateBalanceFromTransactions() {
-        balance = totalbudget;
+    private void startWriter(LedgerSink sink) {
+        journalWriter = new WriteBehindJournal(sink, e -> {
+            e.printStackTrace();
+            Platform.runLater(() -> alert("Save Error", e.getMessage()));
+        });
+    }
+
+    // SQLite mode: the first run copies expenses.csv (and its journal) into the
+    // database; from then on rows load from and save to the database only
+    private void loadTransactionsFromDatabase() {
+        try {
+            database = new SqliteLedger(DBConnection.shared());
 
-        for (Transaction t : transactions) {
-            if (t.type.equals("Credit")) {
-                balance += t.amount;
-            } else {
-                balance -= t.amount;
-            }
+            int migrated = database.migrate(Paths.get(CSV_PATH), Paths.get(JOURNAL_PATH));
+            if (migrated > 0)
+                System.out.println("Migrated " + migrated + " transactions from " + CSV_PATH);
+
+            adopt(database.load());
+            startWriter(database);
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
-    private void loadBudgetFromCSV() {
+    // Paged mode: as loadTransactionsFromDatabase(), but no rows are loaded; the
+    // table reads them a page at a time and the store only gets this session's adds
+    private void openPagedDatabase() throws IOException, SQLException {
+        database = new SqliteLedger(DBConnection.shared());
+
+        int migrated = database.migrate(Paths.get(CSV_PATH), Paths.get(JOURNAL_PATH));
+        if (migrated > 0)
+            System.out.println("Migrated " + migrated + " transactions from " + CSV_PATH);
+
+        adopt(database.loadWithoutRows());
+        indexPages();
+        pagedTransactions = new PagedRows(database);
+        startWriter(database);
+
+        // changes show up in the table once the writer has them in the database
+        journalWriter.onFlush(() -> Platform.runLater(pagedTransactions::refresh));
+    }
 
-        File file = new File(CSV_PATH);
-        if (!file.exists())
+    // Queues one change record for the writer thread; the CSV itself is only
+    // rewritten at checkpoint
+    private void journal(WriteBehindJournal.Write w) {
+        if (journalWriter == null) {
+            alert("Save Error", "Journal is not open, change not saved");
             return;
+        }
+        journalWriter.submit(w);
+        compactIfDue();
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+    // Once the journal has grown enough, the CSV is rewritten in the background;
+    // only the compaction and the copy of the rows happen here
+    private void compactIfDue() {
+        if (compactor == null || !compactor.isDue())
+            return;
+        transactions.compact();
+        compactor.start(transactions.store(), totalbudget);
+    }
 
-            String line = br.readLine();
+    // Folds the journal back into the CSV so the next start replays nothing
+    private void checkpoint() {
+        if (journal == null || journal.size() == 0)
+            return;
 
-            if (line != null && line.startsWith("BUDGET")) {
-                totalbudget = Double.parseDouble(line.split(",")[1]);
-                balance = totalbudget; // reset balance
-                budgetSet = true;
-            }
+        try {
+            transactions.compact();
+            Ledger.checkpoint(Paths.get(CSV_PATH), Paths.get(SNAPSHOT_PATH), journal,
+                    totalbudget, transactions.store(), balances);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    // The binary snapshot if it still matches the CSV, otherwise the CSV itself
+    // (a fresh snapshot is then taken for next time); the journal replays after
+    private void loadLedger() {
+        try {
+            long start = System.nanoTime();
+            adopt(Ledger.load(Paths.get(CSV_PATH), Paths.get(SNAPSHOT_PATH)));
+            System.out.printf("Loaded %d transactions in %.0f ms%n",
+                    transactions.size(), (System.nanoTime() - start) / 1e6);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void adopt(CsvLedgerReader.Result r) {
+        if (r.hasBudget) {
+            totalbudget = r.budget;
+            budgetSet = true;
+        }
+        transactions.setStore(r.store);
+        balances = r.balances;
+    }
+
+    // Budget plus the exact net of every row; nothing accumulates in a double
+    private double balance() {
+        // paged, most rows are not loaded, but the category totals cover them all
+        long net = PAGED ? categoryTotals.netPaise() : balances.netPaise();
+        return TransactionStore.fromPaise(TransactionStore.toPaise(totalbudget) + net);
+    }
+
     // ================= UI =================
 
     private TextField budgetField;
@@ -178,7 +389,7 @@ public class ExpenseTrackerApp extends Application {
         // Show last loaded budget
         budgetField.setText(String.format("%.2f", totalbudget));
 
-        balanceLabel = new Label("Balance: ₹ " + String.format("%.2f", balance));
+        balanceLabel = new Label("Balance: ₹ " + String.format("%.2f", balance()));
         balanceLabel.setStyle("-fx-font-size:14px; -fx-font-weight:bold;");
 
         setBudgetBtn = new Button("Set Budget");
@@ -202,14 +413,14 @@ public class ExpenseTrackerApp extends Application {
                     throw new IllegalArgumentException("Budget cannot be negative");
                 }
 
-                balance = totalbudget;
                 budgetSet = true;
 
                 budgetField.setDisable(true);
                 saveBudgetBtn.setDisable(true);
 
                 updateBalance();
-                writeCSVFromMemory(); //  persist budget
+                double budget = totalbudget;
+                journal(j -> j.appendBudget(budget)); //  persist budget
 
             } catch (NumberFormatException ex) {
                 alert("Invalid Budget", "Enter a valid number.");
@@ -245,6 +456,7 @@ public class ExpenseTrackerApp extends Application {
                 column("Method", "method", 80),
                 column("Amount", "amount", 100),
                 column("Note", "note", 200));
+        tv.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         return tv;
     }
 
@@ -310,27 +522,110 @@ public class ExpenseTrackerApp extends Application {
 
     private void deleteSelectedTransaction() {
 
-        Transaction selected = table.getSelectionModel().getSelectedItem();
+        List<Integer> selected = table.getSelectionModel().getSelectedIndices();
 
-        if (selected == null) {
+        if (selected.isEmpty()) {
             alert("No Selection", "Please select a transaction to delete.");
             return;
         }
+        if (PAGED) {
+            deletePagedRows(selected);
+            return;
+        }
+
+        // Rows are views over the store, so go by position rather than identity
+        int[] rows = new int[selected.size()];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = filteredTransactions.getSourceIndex(selected.get(i));
+        Arrays.sort(rows);
 
-        // Update balance
-        balance -= selected.type.equals("Credit")
-                ? selected.amount
-                : -selected.amount;
+        TransactionStore st = transactions.store();
+        long[] ids = new long[rows.length];
+        for (int i = 0; i < rows.length; i++)
+            ids[i] = st.id(rows[i]);
 
-        transactions.remove(selected);
+        table.getSelectionModel().clearSelection();
+        transactions.removeRows(rows);
         updateBalance();
 
-        // Update CSV permanently
-        writeCSVFromMemory();
+        // Record the whole selection permanently, as one record
+        journal(j -> j.appendRemove(ids));
+
+        if (st.deletedCount() >= COMPACT_AFTER && st.deletedCount() * 4L >= st.size())
+            transactions.compact();
+    }
+
+    // Paged table: the rows are only in the database, so the totals (and the
+    // dashboard) are handed the deleted rows directly
+    private void deletePagedRows(List<Integer> selected) {
+
+        int[] positions = new int[selected.size()];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = selected.get(i);
+
+        TransactionStore gone;
+        try {
+            gone = pagedTransactions.rows(positions);
+        } catch (SQLException | IndexOutOfBoundsException e) {
+            e.printStackTrace();
+            alert("Delete Error", e.getMessage());
+            return;
+        }
+
+        long[] ids = new long[gone.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = gone.id(i);
+
+        table.getSelectionModel().clearSelection();
+        categoryTotals.removeRows(gone);
+        timeRollups.removeRows(gone);
+        if (dashboard != null)
+            dashboard.removeRows(gone);
+        updateBalance();
+
+        // the rows leave the table once the writer has flushed this
+        journal(j -> j.appendRemove(ids));
+    }
+
+    // Paged table: the database sorts, by the first sort column (then by id)
+    private boolean sortPaged(TableView<Transaction> tv) {
+        SqliteLedger.Order order = SqliteLedger.Order.ID;
+        boolean descending = false;
+
+        if (!tv.getSortOrder().isEmpty()) {
+            TableColumn<Transaction, ?> c = tv.getSortOrder().get(0);
+            // columns go by the property they show, see column()
+            switch (c.getId()) {
+                case "dateStr":
+                    order = SqliteLedger.Order.DATE;
+                    break;
+                case "category":
+                    order = SqliteLedger.Order.CATEGORY;
+                    break;
+                case "type":
+                    order = SqliteLedger.Order.TYPE;
+                    break;
+                case "method":
+                    order = SqliteLedger.Order.METHOD;
+                    break;
+                case "amount":
+                    order = SqliteLedger.Order.AMOUNT;
+                    break;
+                case "note":
+                    order = SqliteLedger.Order.NOTE;
+                    break;
+            }
+            descending = c.getSortType() == TableColumn.SortType.DESCENDING;
+        }
+
+        pagedTransactions.setOrder(order, descending);
+        return true;
     }
 
     // =========filter=====================
-    private FilteredList<Transaction> filteredTransactions;
+    private FilteredRows filteredTransactions;
+    private PagedRows pagedTransactions;
+    private FilterScheduler filterScheduler;
     private ComboBox<String> categoryFilter;
     private TextField noteFilter;
     private DatePicker fromDatePicker, toDatePicker;
@@ -383,11 +678,12 @@ public class ExpenseTrackerApp extends Application {
 
         // ---- Apply listeners ----
         categoryFilter.setOnAction(e -> applyFilters());
-        noteFilter.textProperty().addListener((a, b, c) -> applyFilters());
+        // typed fields wait for a pause in input before searching
+        noteFilter.textProperty().addListener((a, b, c) -> applyFiltersDebounced());
         fromDatePicker.setOnAction(e -> applyFilters());
         toDatePicker.setOnAction(e -> applyFilters());
-        minAmountField.textProperty().addListener((a, b, c) -> applyFilters());
-        maxAmountField.textProperty().addListener((a, b, c) -> applyFilters());
+        minAmountField.textProperty().addListener((a, b, c) -> applyFiltersDebounced());
+        maxAmountField.textProperty().addListener((a, b, c) -> applyFiltersDebounced());
 
         HBox filterBar = new HBox(
                 8,
@@ -403,44 +699,55 @@ public class ExpenseTrackerApp extends Application {
         return filterBar;
     }
 
+    // Both evaluate off the FX thread; the table updates when the answer is in.
+    // A paged table has the database run the query, newest request only
     private void applyFilters() {
+        if (PAGED)
+            pagedTransactions.setQuery(compileFilters());
+        else
+            filterScheduler.submit(compileFilters());
+    }
 
-        filteredTransactions.setPredicate(t -> {
-
-            // Category filter
-            if (!categoryFilter.getValue().equals("All") &&
-                    !t.category.equals(categoryFilter.getValue()))
-                return false;
+    private void applyFiltersDebounced() {
+        if (PAGED)
+            pagedTransactions.setQuery(compileFilters());
+        else
+            filterScheduler.submitDebounced(compileFilters());
+    }
 
-            // Note filter
-            if (!noteFilter.getText().isBlank() &&
-                    !t.note.toLowerCase().contains(noteFilter.getText().toLowerCase()))
-                return false;
+    // Reads the filter bar once and turns it into an index query
+    private FilterEngine.Query compileFilters() {
 
-            // Date range filter
-            if (fromDatePicker.getValue() != null &&
-                    t.date.isBefore(fromDatePicker.getValue()))
-                return false;
+        String catValue = categoryFilter.getValue();
+        int catCode = FilterEngine.Query.ANY_CATEGORY;
+        if (!catValue.equals("All")) {
+            catCode = Symbols.CATEGORIES.find(catValue);
+            if (catCode < 0)
+                catCode = Integer.MAX_VALUE; // never seen: matches nothing
+        }
 
-            if (toDatePicker.getValue() != null &&
-                    t.date.isAfter(toDatePicker.getValue()))
-                return false;
+        int fromDay = fromDatePicker.getValue() == null ? Integer.MIN_VALUE
+                : (int) fromDatePicker.getValue().toEpochDay();
+        int toDay = toDatePicker.getValue() == null ? Integer.MAX_VALUE
+                : (int) toDatePicker.getValue().toEpochDay();
 
-            // Amount range filter
-            try {
-                if (!minAmountField.getText().isBlank() &&
-                        t.amount < Double.parseDouble(minAmountField.getText()))
-                    return false;
-
-                if (!maxAmountField.getText().isBlank() &&
-                        t.amount > Double.parseDouble(maxAmountField.getText()))
-                    return false;
-            } catch (NumberFormatException e) {
-                return true; // ignore invalid input
-            }
+        // amount >= min  <=>  paise >= ceil(min * 100), done in decimal to stay exact
+        long minPaise = Long.MIN_VALUE, maxPaise = Long.MAX_VALUE;
+        try {
+            if (!minAmountField.getText().isBlank())
+                minPaise = new BigDecimal(minAmountField.getText().trim())
+                        .movePointRight(2).setScale(0, RoundingMode.CEILING).longValueExact();
+
+            if (!maxAmountField.getText().isBlank())
+                maxPaise = new BigDecimal(maxAmountField.getText().trim())
+                        .movePointRight(2).setScale(0, RoundingMode.FLOOR).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            // ignore invalid input
+            minPaise = Long.MIN_VALUE;
+            maxPaise = Long.MAX_VALUE;
+        }
 
-            return true;
-        });
+        return new FilterEngine.Query(catCode, noteFilter.getText(), fromDay, toDay, minPaise, maxPaise);
     }
 
     private void clearFilters() {
@@ -485,8 +792,6 @@ public class ExpenseTrackerApp extends Application {
         String cat = categoryCombo.getEditor().getText();
         if (cat == null || cat.isBlank())
             cat = "General";
-        if (!categories.contains(cat))
-            categories.add(cat);
 
         apply(new Transaction(
                 datePicker.getValue(),
@@ -516,27 +821,39 @@ public class ExpenseTrackerApp extends Application {
             return;
 
         try {
-            List<String> lines = Files.readAllLines(file.toPath());
+            // 1. parse + validate the whole file; nothing is applied on error
+            long t0 = System.nanoTime();
+            List<StatementImport.Row> rows = StatementImport.parse(file.toPath());
+            long parseNanos = System.nanoTime() - t0;
+            IMPORT_PARSE.stop(t0, rows.size(), file.length());
 
-            for (int i = 1; i < lines.size(); i++) {
-                String[] p = lines.get(i).split(",");
-                LocalDate date = LocalDate.parse(p[0]);
-                String name = p[1];
-                double amt = Double.parseDouble(p[2]);
-                String type = p[3];
+            // 2. categorize (prompts once per unknown payee)
+            List<Transaction> batch = new ArrayList<>(rows.size());
+            for (StatementImport.Row r : rows) {
 
-                String cat = categoryMemory.get(name);
+                String cat = categoryMemory.get(r.name);
                 if (cat == null) {
                     TextInputDialog d = new TextInputDialog("General");
-                    d.setHeaderText("Category for: " + name);
+                    d.setHeaderText("Category for: " + r.name);
                     cat = d.showAndWait().orElse("General");
-                    categoryMemory.put(name, cat);
+                    categoryMemory.put(r.name, cat);
                 }
 
-                if (!categories.contains(cat))
-                    categories.add(cat);
-                apply(new Transaction(date, cat, type, "UPI", amt, name));
+                batch.add(new Transaction(r.date, cat, r.type, "UPI", r.amount, r.name));
             }
+
+            // 3. commit in one go
+            long t1 = System.nanoTime();
+            applyAll(batch);
+            IMPORT_APPLY.stop(t1, batch.size());
+            long nanos = parseNanos + (System.nanoTime() - t1);
+
+            double rowsPerSec = batch.size() / Math.max(nanos / 1e9, 1e-9);
+            System.out.printf("Imported %d rows in %.1f ms (%.0f rows/sec)%n",
+                    batch.size(), nanos / 1e6, rowsPerSec);
+            alert("Import Complete", String.format("Imported %d transactions (%.0f rows/sec).",
+                    batch.size(), rowsPerSec));
+
         } catch (Exception ex) {
             alert("CSV Error", ex.getMessage());
         }
@@ -545,22 +862,30 @@ public class ExpenseTrackerApp extends Application {
     private void apply(Transaction t) {
 
         transactions.add(t);
+        journal(j -> j.appendAdd(t)); // O(1) append, folded into the CSV at checkpoint
+        updateBalance();
+    }
+
+    // Bulk form of apply(): one list change event, one balance update, one flush
+    private void applyAll(List<Transaction> batch) {
 
-        balance += t.type.equals("Credit")
-                ? t.amount
-                : -t.amount;
+        if (batch.isEmpty())
+            return;
 
-        writeCSVFromMemory(); // ONE SOURCE OF TRUTH
+        transactions.addAll(batch);
+
+        journal(j -> j.appendAll(batch));
         updateBalance();
     }
 
     private void updateBalance() {
-        balanceLabel.setText(String.format("Balance: %.2f", balance));
+        balanceLabel.setText(String.format("Balance: %.2f", balance()));
     }
 
     // ================= DASHBOARD =================
     private final Map<String, String> categoryColorMap = new HashMap<>();
     private int colorIndex = 0;
+    private Dashboard dashboard;
 
     private final String[] COLORS = {
             "#e67e22", "#f1c40f", "#2ecc71",
@@ -574,147 +899,13 @@ public class ExpenseTrackerApp extends Application {
                 k -> COLORS[colorIndex++ % COLORS.length]);
     }
 
+    // One window for the whole session: built on first use, then shown again
+    // as it is; it keeps itself up to date with adds, deletes and imports
     private void openDashboard() {
-
-        Map<String, Double> categorySum = new LinkedHashMap<>();
-        for (Transaction t : transactions) {
-            if (t.type.equals("Debit")) {
-                categorySum.put(
-                        t.category,
-                        categorySum.getOrDefault(t.category, 0.0) + t.amount);
-            }
-        }
-
-        // -------- PIE CHART WITH PERCENTAGE --------
-        // -------- PIE CHART --------
-        PieChart pie = new PieChart();
-
-        double total = categorySum.values().stream().mapToDouble(Double::doubleValue).sum();
-
-        VBox categoryAmountBox = new VBox(8);
-
-        for (Map.Entry<String, Double> e : categorySum.entrySet()) {
-
-            String category = e.getKey();
-            double value = e.getValue();
-            String color = getColorForCategory(category);
-
-            PieChart.Data data = new PieChart.Data(category, value);
-            pie.getData().add(data);
-
-            double percent = (value / total) * 100;
-
-            data.nodeProperty().addListener((obs, oldNode, node) -> {
-                if (node != null) {
-                    node.setStyle("-fx-pie-color: " + color + ";");
-
-                    Tooltip.install(node,
-                            new Tooltip(
-                                    category +
-                                            "\n₹ " + String.format("%.2f", value) +
-                                            String.format(" (%.1f%%)", percent)));
-                }
-            });
-
-            // Side info panel
-            Circle dot = new Circle(6, Color.web(color));
-            Label label = new Label(category + "  ₹ " + String.format("%.2f", value));
-            label.setStyle("-fx-font-size: 13px;");
-
-            HBox row = new HBox(10, dot, label);
-            row.setAlignment(Pos.CENTER_LEFT);
-
-            categoryAmountBox.getChildren().add(row);
-        }
-
-        pie.setTitle("Expenses by Category");
-
-        // -------- LINE CHART --------
-        CategoryAxis x = new CategoryAxis();
-        x.setLabel("Date");
-
-        NumberAxis y = new NumberAxis();
-        y.setLabel("Amount (₹)");
-
-        LineChart<String, Number> lineChart = new LineChart<>(x, y);
-        lineChart.setLegendVisible(false);
-
-        ComboBox<String> filter = new ComboBox<>(FXCollections.observableArrayList(
-                "Weekly", "Monthly", "Yearly"));
-        filter.setValue("Monthly");
-        filter.setOnAction(e -> updateLineChart(lineChart, filter.getValue()));
-
-        updateLineChart(lineChart, "Monthly");
-
-        HBox pieSection = new HBox(30, pie, categoryAmountBox);
-        pieSection.setAlignment(Pos.CENTER_LEFT);
-
-        VBox root = new VBox(15, filter, pieSection, lineChart);
-        root.setPadding(new Insets(15));
-
-        Stage s = new Stage();
-        s.setTitle("Dashboard");
-        s.setScene(new Scene(root, 900, 750));
-        s.show();
-    }
-
-    private void updateLineChart(LineChart<String, Number> chart, String mode) {
-
-        chart.getData().clear();
-
-        Map<String, Map<String, Double>> categoryMap = new HashMap<>();
-        WeekFields wf = WeekFields.of(Locale.getDefault());
-
-        // ✅ t IS VALID HERE
-        for (Transaction t : transactions) {
-
-            if (!t.type.equals("Debit"))
-                continue;
-
-            String timeKey;
-            if (mode.equals("Weekly"))
-                timeKey = "Week " + t.date.get(wf.weekOfWeekBasedYear());
-            else if (mode.equals("Yearly"))
-                timeKey = String.valueOf(t.date.getYear());
-            else
-                timeKey = t.date.toString(); // yyyy-MM-dd
-
-            categoryMap
-                    .computeIfAbsent(t.category, k -> new TreeMap<>())
-                    .merge(timeKey, t.amount, Double::sum);
-        }
-
-        // build chart series
-        for (String category : categoryMap.keySet()) {
-
-            XYChart.Series<String, Number> series = new XYChart.Series<>();
-            series.setName(category);
-
-            for (Map.Entry<String, Double> e : categoryMap.get(category).entrySet()) {
-
-                XYChart.Data<String, Number> data = new XYChart.Data<>(e.getKey(), e.getValue());
-
-                series.getData().add(data);
-
-                data.nodeProperty().addListener((obs, o, node) -> {
-                    if (node != null) {
-                        Tooltip.install(node,
-                                new Tooltip(
-                                        category +
-                                                "\nDate: " + e.getKey() +
-                                                "\n₹ " + e.getValue()));
-                    }
-                });
-            }
-
-            String color = getColorForCategory(category);
-            series.nodeProperty().addListener((obs, o, n) -> {
-                if (n != null)
-                    n.setStyle("-fx-stroke: " + color + ";");
-            });
-
-            chart.getData().add(series);
-        }
+        if (dashboard == null)
+            dashboard = new Dashboard(transactions.store(), categoryTotals, timeRollups,
+                    this::getColorForCategory);
+        dashboard.show();
     }
 
     // ================= HELPERS =================
@@ -723,6 +914,7 @@ public class ExpenseTrackerApp extends Application {
             String name, String prop, int w) {
 
         TableColumn<Transaction, T> c = new TableColumn<>(name);
+        c.setId(prop);
         c.setCellValueFactory(new PropertyValueFactory<>(prop));
         c.setPrefWidth(w);
         return c;
@@ -733,49 +925,6 @@ public class ExpenseTrackerApp extends Application {
         a.setTitle(t);
         a.showAndWait();
     }
-
-    // ================= MODEL =================
-
-    public static class Transaction {
-        LocalDate date;
-        String category, type, method, note;
-        double amount;
-
-        Transaction(LocalDate d, String c,
-                String t, String m,
-                double a, String n) {
-            date = d;
-            category = c;
-            type = t;
-            method = m;
-            amount = a;
-            note = n;
-        }
-
-        public String getDateStr() {
-            return date.toString();
-        }
-
-        public String getCategory() {
-            return category;
-        }
-
-        public String getType() {
-            return type;
-        }
-
-        public String getMethod() {
-            return method;
-        }
-
-        public double getAmount() {
-            return amount;
-        }
-
-        public String getNote() {
-            return note;
-        }
-    }
 }
 // javac --module-path "C:\Program Files\Java\javafx-sdk-17.0.17\lib"
 // --add-modules javafx.controls,javafx.fxml -d bin src\ExpenseTrackerApp.java
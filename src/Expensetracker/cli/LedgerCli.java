@@ -0,0 +1,238 @@
+package Expensetracker.cli;
+
+import Expensetracker.index.Aggregation;
+import Expensetracker.index.TimeRollups;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.storage.CsvLedgerWriter;
+import Expensetracker.storage.Ledger;
+import Expensetracker.storage.StatementImport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Command line access to a ledger, for scripts and servers without a
+ * display. Loads no JavaFX classes.
+ *
+ * <pre>
+ *   LedgerCli &lt;ledger.csv&gt; import &lt;statement.csv&gt; [--category NAME] [--rules payees.csv] [--method NAME]
+ *   LedgerCli &lt;ledger.csv&gt; summary [--by category|day|week|month|year] [--from DATE] [--to DATE]
+ *   LedgerCli &lt;ledger.csv&gt; export &lt;out.csv&gt; [--from DATE] [--to DATE] [--category NAME]
+ *   LedgerCli &lt;ledger.csv&gt; balance [--on DATE]
+ * </pre>
+ *
+ * Import categorizes each payee from the rules file (lines of
+ * {@code payee,category}) and falls back to --category, default General.
+ * It checkpoints the ledger afterwards, so the CSV is up to date when the
+ * command returns. Reports are CSV on stdout; amounts are in rupees.
+ *
+ * Exit status: 0 ok, 1 failed, 2 bad usage.
+ */
+public class LedgerCli {
+
+    private static final String USAGE = String.join("\n",
+            "usage: LedgerCli <ledger.csv> <command> [options]",
+            "  import <statement.csv> [--category NAME] [--rules payees.csv] [--method NAME]",
+            "  summary [--by category|day|week|month|year] [--from YYYY-MM-DD] [--to YYYY-MM-DD]",
+            "  export <out.csv> [--from YYYY-MM-DD] [--to YYYY-MM-DD] [--category NAME]",
+            "  balance [--on YYYY-MM-DD]");
+
+    private final List<String> args = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+
+    public static void main(String[] argv) {
+        System.exit(run(argv));
+    }
+
+    public static int run(String[] argv) {
+        LedgerCli cli = new LedgerCli();
+        try {
+            cli.parse(argv);
+            if (cli.args.size() < 2)
+                throw new IllegalArgumentException("missing ledger or command");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        Path csv = Paths.get(cli.args.get(0));
+        String command = cli.args.get(1);
+
+        try (Ledger ledger = Ledger.open(csv)) {
+            switch (command) {
+                case "import":
+                    return cli.importStatement(ledger);
+                case "summary":
+                    return cli.summary(ledger);
+                case "export":
+                    return cli.export(ledger);
+                case "balance":
+                    System.out.println(cli.options.containsKey("on")
+                            ? ledger.balanceOn(LocalDate.ofEpochDay(day(cli.options.get("on"))))
+                            : ledger.balance());
+                    return 0;
+                default:
+                    System.err.println("unknown command: " + command);
+                    System.err.println(USAGE);
+                    return 2;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            System.err.println(csv + ": " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void parse(String[] argv) {
+        for (int i = 0; i < argv.length; i++) {
+            if (argv[i].startsWith("--")) {
+                if (i + 1 >= argv.length)
+                    throw new IllegalArgumentException("missing value for " + argv[i]);
+                options.put(argv[i].substring(2), argv[++i]);
+            } else {
+                args.add(argv[i]);
+            }
+        }
+    }
+
+    private String arg(int i, String what) {
+        if (i >= args.size())
+            throw new IllegalArgumentException("missing " + what);
+        return args.get(i);
+    }
+
+    // ---------------- commands ----------------
+
+    private int importStatement(Ledger ledger) throws IOException {
+
+        Path file = Paths.get(arg(2, "statement file"));
+        String fallback = options.getOrDefault("category", "General");
+        String method = options.getOrDefault("method", "UPI");
+        Map<String, String> rules = options.containsKey("rules")
+                ? readRules(Paths.get(options.get("rules")))
+                : new HashMap<>();
+
+        long t0 = System.nanoTime();
+        List<StatementImport.Row> rows = StatementImport.parse(file);
+
+        List<Transaction> batch = new ArrayList<>(rows.size());
+        for (StatementImport.Row r : rows) {
+            String cat = rules.getOrDefault(r.name, fallback);
+            batch.add(new Transaction(r.date, cat, r.type, method, r.amount, r.name));
+        }
+
+        ledger.addAll(batch);
+        ledger.checkpoint();
+
+        System.out.printf("Imported %d rows from %s in %.1f ms%n",
+                batch.size(), file, (System.nanoTime() - t0) / 1e6);
+        return 0;
+    }
+
+    private static Map<String, String> readRules(Path file) throws IOException {
+        Map<String, String> rules = new HashMap<>();
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int comma = line.lastIndexOf(',');
+                if (comma > 0)
+                    rules.put(line.substring(0, comma).trim(), line.substring(comma + 1).trim());
+            }
+        }
+        return rules;
+    }
+
+    private int summary(Ledger ledger) {
+
+        String by = options.getOrDefault("by", "category").toLowerCase(Locale.ROOT);
+        TransactionStore st = ledger.store();
+        IntPredicate rows = rowFilter(st);
+
+        // key -> {debit paise, credit paise, rows}
+        TreeMap<Integer, long[]> totals = new TreeMap<>();
+        TimeRollups.Granularity g = null;
+        if (!by.equals("category")) {
+            try {
+                g = TimeRollups.Granularity.valueOf(by.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown --by: " + by);
+            }
+        }
+
+        Aggregation.Groups groups = Aggregation.run(st, g, rows);
+        for (int i = 0; i < groups.size(); i++) {
+            int key = g == null ? groups.category(i) : groups.period(i);
+            long[] t = totals.computeIfAbsent(key, k -> new long[3]);
+            if (groups.isDebit(i))
+                t[0] += groups.paise(i);
+            else if (groups.isCredit(i))
+                t[1] += groups.paise(i);
+            t[2] += groups.rows(i);
+        }
+
+        System.out.println((g == null ? "category" : by) + ",debit,credit,rows");
+        for (Map.Entry<Integer, long[]> e : totals.entrySet()) {
+            String key = g == null
+                    ? Symbols.CATEGORIES.value(e.getKey())
+                    : TimeRollups.label(g, e.getKey());
+            long[] t = e.getValue();
+            System.out.println(key + "," + rupees(t[0]) + "," + rupees(t[1]) + "," + t[2]);
+        }
+        return 0;
+    }
+
+    private int export(Ledger ledger) throws IOException {
+
+        Path out = Paths.get(arg(2, "output file"));
+        TransactionStore st = ledger.store();
+        IntPredicate rows = rowFilter(st);
+
+        String category = options.get("category");
+        if (category != null) {
+            int code = Symbols.CATEGORIES.find(category);
+            IntPredicate dates = rows;
+            rows = i -> st.categoryCode(i) == code && dates.test(i);
+        }
+
+        int n = CsvLedgerWriter.export(out, st, rows);
+        System.out.println("Exported " + n + " rows to " + out);
+        return 0;
+    }
+
+    // live rows within --from / --to, inclusive
+    private IntPredicate rowFilter(TransactionStore st) {
+        int from = options.containsKey("from") ? day(options.get("from")) : Integer.MIN_VALUE;
+        int to = options.containsKey("to") ? day(options.get("to")) : Integer.MAX_VALUE;
+        return i -> !st.isDeleted(i) && st.epochDay(i) >= from && st.epochDay(i) <= to;
+    }
+
+    private static int day(String s) {
+        try {
+            return (int) LocalDate.parse(s).toEpochDay();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("bad date: " + s);
+        }
+    }
+
+    private static String rupees(long paise) {
+        return BigDecimal.valueOf(paise, 2).toPlainString();
+    }
+}
@@ -0,0 +1,267 @@
+package Expensetracker.index;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Paise and row counts of a {@link TransactionStore} grouped by
+ * category x period x type, summed across cores.
+ *
+ * The rows are split into ranges with fork/join. Each range is summed
+ * into its own table of primitive totals, and the tables are merged
+ * pairwise on the way back up. Totals are whole paise, so the result does
+ * not depend on how the rows were split: {@link #run} gives exactly what
+ * {@link #sequential} does, in the same (period, category, type) order.
+ *
+ * Small stores, and machines with a single core, are summed on the calling
+ * thread. Deleted rows are skipped. The store's read lock is held throughout, so
+ * the store does not change underneath; a row filter is called from
+ * several threads at once.
+ */
+public final class Aggregation {
+
+    /** Ranges of up to this many rows are summed by one thread. */
+    static final int CHUNK_ROWS = 64 * 1024;
+
+    private Aggregation() {
+    }
+
+    /** The groups, sorted by period, then category, then type. */
+    public static final class Groups {
+        private final long[] keys;
+        private final long[] paise;
+        private final long[] rows;
+
+        private Groups(long[] keys, long[] paise, long[] rows) {
+            this.keys = keys;
+            this.paise = paise;
+            this.rows = rows;
+        }
+
+        public int size() {
+            return keys.length;
+        }
+
+        /** The {@link TimeRollups} bucket, or 0 if not grouped by period. */
+        public int period(int i) {
+            return (int) (keys[i] >> 32);
+        }
+
+        public int category(int i) {
+            return (int) keys[i] >>> 8;
+        }
+
+        public int type(int i) {
+            return (int) keys[i] & 0xFF;
+        }
+
+        /** By {@link Symbols#isDebit}, like every other total. */
+        public boolean isDebit(int i) {
+            return Symbols.isDebit(type(i));
+        }
+
+        public boolean isCredit(int i) {
+            return Symbols.isCredit(type(i));
+        }
+
+        public long paise(int i) {
+            return paise[i];
+        }
+
+        public long rows(int i) {
+            return rows[i];
+        }
+
+    }
+
+    /** Collects groups summed somewhere else, e.g. by a database, in any order. */
+    public static final class Builder {
+        private final Table table = new Table();
+
+        /** Adds to the group; the same one may come more than once. */
+        public void add(int period, int category, int type, long paise, long rows) {
+            table.add(key(period, category, type), paise, rows);
+        }
+
+        public Groups build() {
+            return table.sorted();
+        }
+    }
+
+    /**
+     * Totals of the live rows accepted by {@code rows} (every live row if
+     * null), per period of {@code g} (no period if null), category and type.
+     */
+    public static Groups run(TransactionStore st, TimeRollups.Granularity g, IntPredicate rows) {
+        st.readLock().lock();
+        try {
+            if (st.size() <= CHUNK_ROWS || ForkJoinPool.getCommonPoolParallelism() < 2)
+                return sum(st, g, rows, 0, st.size()).sorted();
+            return ForkJoinPool.commonPool().invoke(new SumTask(st, g, rows, 0, st.size())).sorted();
+        } finally {
+            st.readLock().unlock();
+        }
+    }
+
+    /** The same as {@link #run}, on the calling thread only. */
+    public static Groups sequential(TransactionStore st, TimeRollups.Granularity g, IntPredicate rows) {
+        st.readLock().lock();
+        try {
+            return sum(st, g, rows, 0, st.size()).sorted();
+        } finally {
+            st.readLock().unlock();
+        }
+    }
+
+    // period in the high half; category and type (both well under their
+    // limits of 2^23 and 2^8) in the low half, so keys sort as groups do
+    private static long key(int period, int category, int type) {
+        return (long) period << 32 | category << 8 | type;
+    }
+
+    private static Table sum(TransactionStore st, TimeRollups.Granularity g, IntPredicate rows,
+            int from, int to) {
+
+        Table t = new Table();
+        // rows mostly come in date order, so the bucket rarely changes
+        int lastDay = Integer.MIN_VALUE;
+        int period = 0;
+
+        for (int row = from; row < to; row++) {
+            if (st.isDeleted(row) || (rows != null && !rows.test(row)))
+                continue;
+            if (g != null) {
+                int day = st.epochDay(row);
+                if (day != lastDay) {
+                    period = TimeRollups.bucket(g, day);
+                    lastDay = day;
+                }
+            }
+            t.add(key(period, st.categoryCode(row), st.typeCode(row)), st.amountPaise(row), 1);
+        }
+        return t;
+    }
+
+    private static class SumTask extends RecursiveTask<Table> {
+
+        private final TransactionStore st;
+        private final TimeRollups.Granularity g;
+        private final IntPredicate rows;
+        private final int from, to;
+
+        SumTask(TransactionStore st, TimeRollups.Granularity g, IntPredicate rows, int from, int to) {
+            this.st = st;
+            this.g = g;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Table compute() {
+
+            if (to - from <= CHUNK_ROWS)
+                return sum(st, g, rows, from, to);
+
+            int mid = (from + to) >>> 1;
+            SumTask right = new SumTask(st, g, rows, mid, to);
+            right.fork();
+            Table a = new SumTask(st, g, rows, from, mid).compute();
+            Table b = right.join();
+
+            // fold the smaller table into the larger
+            if (a.size < b.size) {
+                b.addAll(a);
+                return b;
+            }
+            a.addAll(b);
+            return a;
+        }
+    }
+
+    // Open-addressing map from a group key to its paise and row count
+    private static final class Table {
+
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        long[] keys = new long[64];
+        long[] paise = new long[64];
+        long[] rows = new long[64];
+        int size;
+
+        Table() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(long key, long p, long n) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    keys[i] = key;
+                    if (++size * 2 > keys.length) {
+                        grow();
+                        add(key, p, n);
+                        return;
+                    }
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            paise[i] += p;
+            rows[i] += n;
+        }
+
+        void addAll(Table o) {
+            for (int i = 0; i < o.keys.length; i++) {
+                if (o.keys[i] != EMPTY)
+                    add(o.keys[i], o.paise[i], o.rows[i]);
+            }
+        }
+
+        private void grow() {
+            long[] k = keys, p = paise, r = rows;
+            keys = new long[k.length * 2];
+            paise = new long[k.length * 2];
+            rows = new long[k.length * 2];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] != EMPTY)
+                    add(k[i], p[i], r[i]);
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ h >>> 32) & mask;
+        }
+
+        Groups sorted() {
+            long[] k = new long[size];
+            int n = 0;
+            for (long key : keys) {
+                if (key != EMPTY)
+                    k[n++] = key;
+            }
+            Arrays.sort(k);
+
+            long[] p = new long[size];
+            long[] r = new long[size];
+            int mask = keys.length - 1;
+            for (int j = 0; j < size; j++) {
+                int i = slot(k[j], mask);
+                while (keys[i] != k[j])
+                    i = (i + 1) & mask;
+                p[j] = paise[i];
+                r[j] = rows[i];
+            }
+            return new Groups(k, p, r);
+        }
+    }
+}
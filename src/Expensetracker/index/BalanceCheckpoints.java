@@ -0,0 +1,174 @@
+package Expensetracker.index;
+
+import Expensetracker.model.TransactionStore;
+
+import java.util.Arrays;
+
+/**
+ * Running net (credits minus debits) of the ledger in paise, with a
+ * checkpoint every {@link #INTERVAL} rows: checkpoint j is the net of rows
+ * [0, j * INTERVAL). The balance after any row is then the checkpoint
+ * before it plus at most INTERVAL - 1 rows, and the current balance is
+ * kept up to date exactly, with no floating-point drift. Deleted rows
+ * count as zero, so a delete only lowers the checkpoints after it, and
+ * compaction recounts them.
+ *
+ * The checkpoints are saved with the ledger snapshot, so a load does not
+ * have to replay every row to know the balance.
+ *
+ * The balance on a day ({@link #netPaiseOn}) binary-searches the last row
+ * dated that day or before, as long as the rows are in date order (as a
+ * CSV ledger usually is), and reads every row otherwise.
+ */
+public class BalanceCheckpoints implements TransactionStore.Listener {
+
+    public static final int INTERVAL = 4096;
+
+    private final TransactionStore store;
+    private long[] at = new long[16];
+    private int count = 1; // at[0] = 0
+    private int size;
+    private long net;
+
+    // every row so far is dated no earlier than the one before it
+    private boolean inDateOrder = true;
+    private int lastDay = Integer.MIN_VALUE;
+
+    private BalanceCheckpoints(TransactionStore store) {
+        this.store = store;
+    }
+
+    /** Full replay over every row of {@code store}. */
+    public static BalanceCheckpoints of(TransactionStore store) {
+        BalanceCheckpoints b = new BalanceCheckpoints(store);
+        for (int i = 0; i < store.size(); i++)
+            b.rowAdded(store, i);
+        return b;
+    }
+
+    /**
+     * Takes over saved checkpoints for {@code store}; only the rows after
+     * the last one are read. Replays everything if they don't fit the store.
+     */
+    public static BalanceCheckpoints restore(TransactionStore store, long[] checkpoints) {
+        int n = store.size();
+        if (checkpoints.length != n / INTERVAL + 1 || checkpoints[0] != 0)
+            return of(store);
+
+        BalanceCheckpoints b = new BalanceCheckpoints(store);
+        b.at = Arrays.copyOf(checkpoints, Math.max(16, checkpoints.length + 1));
+        b.count = checkpoints.length;
+        b.size = n;
+        b.net = checkpoints[b.count - 1] + b.sum((b.count - 1) * INTERVAL, n);
+        for (int i = 0; i < n; i++)
+            b.sawDay(store.epochDay(i));
+        return b;
+    }
+
+    /** Copy of the checkpoints, for saving. */
+    public long[] checkpoints() {
+        return Arrays.copyOf(at, count);
+    }
+
+    /** Net of every row. */
+    public long netPaise() {
+        return net;
+    }
+
+    /** Net of rows [0, row], i.e. the change in balance up to and including {@code row}. */
+    public long netPaiseThrough(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        int end = row + 1;
+        int j = end / INTERVAL;
+        return at[j] + sum(j * INTERVAL, end);
+    }
+
+    /**
+     * Net of every row dated {@code epochDay} or earlier: the checkpoint
+     * before the last such row plus the rows up to it, when the rows are in
+     * date order.
+     */
+    public long netPaiseOn(int epochDay) {
+        if (!inDateOrder) {
+            long s = 0;
+            for (int i = 0; i < size; i++)
+                if (store.epochDay(i) <= epochDay)
+                    s += value(i);
+            return s;
+        }
+
+        // first row dated after epochDay
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (store.epochDay(mid) <= epochDay)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo == 0 ? 0 : netPaiseThrough(lo - 1);
+    }
+
+    @Override
+    public void rowAdded(TransactionStore s, int row) {
+        // rows are only ever appended
+        sawDay(s.epochDay(row));
+        net += value(row);
+        size++;
+        if (size % INTERVAL == 0) {
+            if (count == at.length)
+                at = Arrays.copyOf(at, count * 2);
+            at[count++] = net;
+        }
+    }
+
+    @Override
+    public void rowRemoved(TransactionStore s, int row) {
+        long v = value(row);
+        net -= v;
+
+        // the row keeps its place, so only the checkpoints past it change
+        for (int j = row / INTERVAL + 1; j < count; j++)
+            at[j] -= v;
+    }
+
+    @Override
+    public void compacted(TransactionStore s, int[] newRow) {
+        BalanceCheckpoints full = of(store);
+        at = full.at;
+        count = full.count;
+        size = full.size;
+        net = full.net;
+        inDateOrder = full.inDateOrder;
+        lastDay = full.lastDay;
+    }
+
+    private void sawDay(int day) {
+        if (day < lastDay)
+            inDateOrder = false;
+        lastDay = day;
+    }
+
+    private long value(int row) {
+        if (store.isDeleted(row))
+            return 0;
+        long p = store.amountPaise(row);
+        return store.isCredit(row) ? p : -p;
+    }
+
+    private long sum(int from, int to) {
+        long s = 0;
+        for (int i = from; i < to; i++)
+            s += value(i);
+        return s;
+    }
+
+    /** True if every checkpoint and the net equal a full replay of the store. */
+    public boolean verify() {
+        BalanceCheckpoints full = of(store);
+        return full.net == net
+                && full.size == size
+                && Arrays.equals(full.checkpoints(), checkpoints());
+    }
+}
@@ -0,0 +1,160 @@
+package Expensetracker.index;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+
+import java.util.Arrays;
+
+/**
+ * Running debit/credit totals and row counts per category, kept in step with
+ * a {@link TransactionStore} so the dashboard never has to rescan the rows.
+ *
+ * Debits and credits are told apart by {@link Symbols#isDebit} and
+ * {@link Symbols#isCredit}, as in {@link TimeRollups}. Rows of any other
+ * type are in neither, but still count against the balance, so their sum is
+ * kept for {@link #netPaise()}.
+ *
+ * Totals are held in paise, so the incremental values are exactly what a
+ * full recomputation ({@link #of(TransactionStore)}) would give, whatever the
+ * order of adds and removes.
+ */
+public class CategoryTotals implements TransactionStore.Listener {
+
+    private long[] debitPaise = new long[0];
+    private long[] creditPaise = new long[0];
+    private int[] debitCount = new int[0];
+    private int[] creditCount = new int[0];
+    // rows that are neither debit nor credit, e.g. "Refund"
+    private long otherPaise;
+
+    /** Full recomputation over every live row of {@code store}, summed by {@link Aggregation}. */
+    public static CategoryTotals of(TransactionStore store) {
+        CategoryTotals totals = new CategoryTotals();
+        totals.add(Aggregation.run(store, null, null));
+        return totals;
+    }
+
+    /**
+     * Adds in totals summed elsewhere, e.g. over one page of a ledger read a
+     * page at a time. Periods, if any, are ignored.
+     */
+    public void add(Aggregation.Groups groups) {
+        for (int i = 0; i < groups.size(); i++) {
+            int cat = groups.category(i);
+            ensureCategory(cat);
+            if (groups.isDebit(i)) {
+                debitPaise[cat] += groups.paise(i);
+                debitCount[cat] += (int) groups.rows(i);
+            } else if (groups.isCredit(i)) {
+                creditPaise[cat] += groups.paise(i);
+                creditCount[cat] += (int) groups.rows(i);
+            } else {
+                otherPaise += groups.paise(i);
+            }
+        }
+    }
+
+    /**
+     * Takes out every live row of {@code rows}, e.g. rows deleted from a
+     * ledger read a page at a time, whose store these totals do not follow.
+     */
+    public void removeRows(TransactionStore rows) {
+        for (int r = 0; r < rows.size(); r++) {
+            if (!rows.isDeleted(r))
+                apply(rows, r, -1);
+        }
+    }
+
+    @Override
+    public void rowAdded(TransactionStore store, int row) {
+        apply(store, row, 1);
+    }
+
+    @Override
+    public void rowRemoved(TransactionStore store, int row) {
+        apply(store, row, -1);
+    }
+
+    private void apply(TransactionStore store, int row, int sign) {
+
+        int cat = store.categoryCode(row);
+        ensureCategory(cat);
+
+        if (store.isDebit(row)) {
+            debitPaise[cat] += sign * store.amountPaise(row);
+            debitCount[cat] += sign;
+        } else if (store.isCredit(row)) {
+            creditPaise[cat] += sign * store.amountPaise(row);
+            creditCount[cat] += sign;
+        } else {
+            otherPaise += sign * store.amountPaise(row);
+        }
+    }
+
+    private void ensureCategory(int code) {
+        if (code < debitPaise.length)
+            return;
+
+        int n = Math.max(code + 1, debitPaise.length * 2);
+        debitPaise = Arrays.copyOf(debitPaise, n);
+        creditPaise = Arrays.copyOf(creditPaise, n);
+        debitCount = Arrays.copyOf(debitCount, n);
+        creditCount = Arrays.copyOf(creditCount, n);
+    }
+
+    /** One past the highest category code seen so far. */
+    public int categoryCount() {
+        return debitPaise.length;
+    }
+
+    public long debitPaise(int category) {
+        return category < debitPaise.length ? debitPaise[category] : 0;
+    }
+
+    public long creditPaise(int category) {
+        return category < creditPaise.length ? creditPaise[category] : 0;
+    }
+
+    public int debitCount(int category) {
+        return category < debitCount.length ? debitCount[category] : 0;
+    }
+
+    public int creditCount(int category) {
+        return category < creditCount.length ? creditCount[category] : 0;
+    }
+
+    public long totalDebitPaise() {
+        long sum = 0;
+        for (long p : debitPaise)
+            sum += p;
+        return sum;
+    }
+
+    public long totalCreditPaise() {
+        long sum = 0;
+        for (long p : creditPaise)
+            sum += p;
+        return sum;
+    }
+
+    /**
+     * The net of every row by the balance rule of {@link BalanceCheckpoints}:
+     * credits add and every other row, debit or not, subtracts.
+     */
+    public long netPaise() {
+        return totalCreditPaise() - totalDebitPaise() - otherPaise;
+    }
+
+    /** True if every total and count equals {@code other}'s. */
+    public boolean sameAs(CategoryTotals other) {
+        int n = Math.max(categoryCount(), other.categoryCount());
+        for (int c = 0; c < n; c++) {
+            if (debitPaise(c) != other.debitPaise(c)
+                    || creditPaise(c) != other.creditPaise(c)
+                    || debitCount(c) != other.debitCount(c)
+                    || creditCount(c) != other.creditCount(c))
+                return false;
+        }
+        return otherPaise == other.otherPaise;
+    }
+}
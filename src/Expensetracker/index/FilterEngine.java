@@ -0,0 +1,674 @@
+package Expensetracker.index;
+
+import Expensetracker.model.TransactionStore;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Answers filter-bar queries from indexes instead of testing every row:
+ *
+ * <ul>
+ *   <li>rows sorted by date, so a date range is one binary-searched slice</li>
+ *   <li>rows sorted by amount, likewise for a min/max range</li>
+ *   <li>one bitmap of rows per category</li>
+ *   <li>a {@link TrigramIndex} over notes</li>
+ * </ul>
+ *
+ * A query starts from the smallest of those candidate sets and checks the
+ * remaining conditions on the columns of just those rows. Indexes follow the
+ * store through {@link TransactionStore.Listener}. Deleted rows stay in the
+ * sorted indexes until the store is compacted and are skipped by
+ * {@link #matches}; only the category bitmaps drop them straight away.
+ *
+ * A row added with a key no smaller than the last goes straight onto the end
+ * of a sorted index. Any other new row waits at the end of it, and all such
+ * rows are sorted and merged in, in one pass, when the next query needs the
+ * index. So an import or a journal replay costs one merge, not a shift of
+ * the whole index per row.
+ *
+ * While typing into the note search, each query usually extends the last
+ * one; the previous result is then refined instead of searched again.
+ *
+ * To search off the FX thread, take a {@link #snapshot} and
+ * {@link #run(Snapshot, BooleanSupplier) run} it. Only taking the snapshot
+ * holds the store's {@link TransactionStore#readLock()}; it shares the
+ * indexes, and the next change after it copies them before writing, so
+ * the search never blocks the FX thread and never sees a half-made change.
+ * The trigram index is built on the first note search; for a snapshot that
+ * happens on the searching thread, outside the lock, as well.
+ */
+public class FilterEngine implements TransactionStore.Listener {
+
+    /** Compiled filter bar state. Unset bounds are open. */
+    public static class Query {
+        public static final int ANY_CATEGORY = -1;
+
+        final int category;
+        final String note;
+        final int fromDay, toDay;
+        final long minPaise, maxPaise;
+
+        public Query(int category, String note,
+                int fromDay, int toDay,
+                long minPaise, long maxPaise) {
+            this.category = category;
+            this.note = note == null || note.isBlank() ? null : note.toLowerCase(Locale.ROOT);
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.minPaise = minPaise;
+            this.maxPaise = maxPaise;
+        }
+
+        public static Query all() {
+            return new Query(ANY_CATEGORY, null,
+                    Integer.MIN_VALUE, Integer.MAX_VALUE,
+                    Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /** Category code, or {@link #ANY_CATEGORY}. */
+        public int category() {
+            return category;
+        }
+
+        /** Lowercased note substring, or null. */
+        public String note() {
+            return note;
+        }
+
+        public int fromDay() {
+            return fromDay;
+        }
+
+        public int toDay() {
+            return toDay;
+        }
+
+        public long minPaise() {
+            return minPaise;
+        }
+
+        public long maxPaise() {
+            return maxPaise;
+        }
+
+        public boolean hasDateRange() {
+            return fromDay != Integer.MIN_VALUE || toDay != Integer.MAX_VALUE;
+        }
+
+        public boolean hasAmountRange() {
+            return minPaise != Long.MIN_VALUE || maxPaise != Long.MAX_VALUE;
+        }
+
+        boolean isAll() {
+            return category == ANY_CATEGORY && note == null && !hasDateRange() && !hasAmountRange();
+        }
+
+        // Every row matching this query also matches `wider`
+        boolean narrows(Query wider) {
+            return category == wider.category
+                    && fromDay == wider.fromDay && toDay == wider.toDay
+                    && minPaise == wider.minPaise && maxPaise == wider.maxPaise
+                    && (wider.note == null || (note != null && note.contains(wider.note)));
+        }
+    }
+
+    /** A query and everything it reads, frozen at one version of the store. */
+    public static final class Snapshot {
+        final Query query;
+        final TransactionStore.Snapshot rows;
+        final int size;
+        final int[] byDate;
+        final int[] byAmount;
+        final long[][] categoryBits;
+        final int[] categoryRows;
+        final int[] noteRows; // trigram candidates, or null
+
+        private Snapshot(Query q, FilterEngine e) {
+            query = q;
+            rows = e.store.snapshot();
+            size = e.size;
+            byDate = e.byDate;
+            byAmount = e.byAmount;
+            categoryBits = e.categoryBits;
+            categoryRows = e.categoryRows;
+            noteRows = q.note == null ? null : e.notes.candidates(q.note);
+        }
+
+        public Query query() {
+            return query;
+        }
+
+        /** The store's version the answer is for. */
+        public long version() {
+            return rows.version();
+        }
+    }
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    // rows scanned between checks for a cancelled query
+    private static final int CHECK_EVERY = 4096;
+
+    private interface Key {
+        long of(int row);
+    }
+
+    private final TransactionStore store;
+    private final Key dateKey;
+    private final Key amountKey;
+
+    private int size;
+    private int[] byDate;
+    private int[] byAmount;
+    // leading entries of byDate/byAmount in key order; the rest, up to size,
+    // are rows added since, waiting for settle()
+    private int dateSorted, amountSorted;
+    private long[][] categoryBits = new long[0][];
+    private int[] categoryRows = new int[0];
+    private final TrigramIndex notes;
+
+    // a snapshot holds the arrays above; copy them before the next change
+    private boolean shared;
+
+    // bumped by every compaction, which renumbers the rows
+    private int compactions;
+
+    // last answer, for the store version it was computed at
+    private Query lastQuery;
+    private long lastVersion;
+    private int[] lastResult;
+
+    public FilterEngine(TransactionStore store) {
+        this.store = store;
+        this.dateKey = store::epochDay;
+        this.amountKey = store::amountPaise;
+
+        size = store.size();
+        byDate = identity(size);
+        byAmount = identity(size);
+        sortRows(byDate, size, dateKey);
+        sortRows(byAmount, size, amountKey);
+        dateSorted = amountSorted = size;
+
+        for (int row = 0; row < size; row++) {
+            if (!store.isDeleted(row))
+                setCategoryBit(store.categoryCode(row), row);
+        }
+
+        notes = new TrigramIndex(store);
+    }
+
+    // ---------------- queries ----------------
+
+    /** Matching rows in ascending (table) order. Call on the thread that changes the store. */
+    public int[] run(Query q) {
+        return run(freeze(q, false), NEVER);
+    }
+
+    /** Everything {@code q} needs, as of now, for {@link #run(Snapshot, BooleanSupplier)} on any thread. */
+    public Snapshot snapshot(Query q) {
+        if (q.note != null && q.note.length() >= 3)
+            buildNotes();
+        return freeze(q, true);
+    }
+
+    // Builds the trigram index from a snapshot of the rows without holding
+    // the store's lock, so adds and deletes do not wait for it, then swaps it
+    // in under the lock with the rows added meanwhile. After a compaction
+    // the rows have moved, and the index builds under the lock after all.
+    private void buildNotes() {
+        TransactionStore.Snapshot rows;
+        int seen;
+        Lock lock = store.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (notes.isBuilt())
+                    return;
+                rows = store.snapshot();
+                seen = compactions;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        TrigramIndex.Built built = TrigramIndex.build(rows);
+
+        lock.lock();
+        try {
+            synchronized (this) {
+                if (!notes.isBuilt() && compactions == seen)
+                    notes.adopt(built);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the store's lock before the engine's, as a listener holding the write
+    // lock would; the trigram index may build on first use, so one at a time
+    private Snapshot freeze(Query q, boolean share) {
+        Lock lock = store.readLock();
+        lock.lock();
+        try {
+            synchronized (this) {
+                settle();
+                Snapshot s = new Snapshot(q, this);
+                shared |= share;
+                return s;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Matching rows of {@code s} in ascending order, without any lock.
+     * Gives up and returns null as soon as {@code cancelled} says the
+     * answer is no longer wanted.
+     */
+    public int[] run(Snapshot s, BooleanSupplier cancelled) {
+        Query q = s.query;
+        int[] previous = null;
+        synchronized (this) {
+            if (lastQuery != null && lastVersion == s.version() && q.narrows(lastQuery))
+                previous = lastResult;
+        }
+
+        int[] result = previous != null
+                ? refine(s, previous, cancelled)
+                : search(s, cancelled);
+        if (result != null) {
+            synchronized (this) {
+                lastQuery = q;
+                lastVersion = s.version();
+                lastResult = result;
+            }
+        }
+        return result;
+    }
+
+    private int[] refine(Snapshot s, int[] previous, BooleanSupplier cancelled) {
+        int[] out = new int[previous.length];
+        int n = 0;
+        for (int i = 0; i < previous.length; i++) {
+            if (i % CHECK_EVERY == 0 && cancelled.getAsBoolean())
+                return null;
+            if (matches(s.query, s.rows, previous[i]))
+                out[n++] = previous[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private int[] search(Snapshot s, BooleanSupplier cancelled) {
+
+        Query q = s.query;
+        TransactionStore.Snapshot rs = s.rows;
+        int size = s.size;
+        if (q.isAll() && rs.deletedCount() == 0)
+            return identity(size);
+
+        // pick the narrowest starting set
+        int dateLo = 0, dateHi = size;
+        if (q.hasDateRange()) {
+            dateLo = lowerBound(s.byDate, size, rs::epochDay, q.fromDay);
+            dateHi = upperBound(s.byDate, size, rs::epochDay, q.toDay);
+        }
+        int amountLo = 0, amountHi = size;
+        if (q.hasAmountRange()) {
+            amountLo = lowerBound(s.byAmount, size, rs::amountPaise, q.minPaise);
+            amountHi = upperBound(s.byAmount, size, rs::amountPaise, q.maxPaise);
+        }
+        int catRows = q.category == Query.ANY_CATEGORY ? size
+                : q.category < s.categoryRows.length ? s.categoryRows[q.category] : 0;
+
+        int dateRows = Math.max(0, dateHi - dateLo);
+        int amountRows = Math.max(0, amountHi - amountLo);
+
+        int[] noteRows = s.noteRows;
+        if (noteRows != null
+                && noteRows.length <= Math.min(Math.min(dateRows, amountRows), catRows))
+            return refine(s, noteRows, cancelled);
+
+        int[] out = new int[Math.min(Math.min(dateRows, amountRows), catRows)];
+        int n = 0;
+
+        if (catRows <= dateRows && catRows <= amountRows) {
+            // category bitmap (or everything) is already in row order
+            if (q.category == Query.ANY_CATEGORY) {
+                for (int row = 0; row < size; row++) {
+                    if (row % CHECK_EVERY == 0 && cancelled.getAsBoolean())
+                        return null;
+                    if (matches(q, rs, row))
+                        out[n++] = row;
+                }
+            } else if (catRows > 0) {
+                long[] bits = s.categoryBits[q.category];
+                for (int w = 0; w < bits.length; w++) {
+                    if (w % (CHECK_EVERY / 64) == 0 && cancelled.getAsBoolean())
+                        return null;
+                    long word = bits[w];
+                    while (word != 0) {
+                        int row = (w << 6) + Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                        if (matches(q, rs, row))
+                            out[n++] = row;
+                    }
+                }
+            }
+        } else {
+            // a sorted slice: mark hits, then read them back in row order
+            int[] slice = dateRows <= amountRows ? s.byDate : s.byAmount;
+            int lo = dateRows <= amountRows ? dateLo : amountLo;
+            int hi = dateRows <= amountRows ? dateHi : amountHi;
+
+            long[] hits = new long[(size + 63) >>> 6];
+            for (int i = lo; i < hi; i++) {
+                if ((i - lo) % CHECK_EVERY == 0 && cancelled.getAsBoolean())
+                    return null;
+                int row = slice[i];
+                if (matches(q, rs, row))
+                    hits[row >>> 6] |= 1L << row;
+            }
+            for (int w = 0; w < hits.length; w++) {
+                long word = hits[w];
+                while (word != 0) {
+                    out[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    // matches(Query, int) against a snapshot
+    private static boolean matches(Query q, TransactionStore.Snapshot rs, int row) {
+
+        if (rs.isDeleted(row))
+            return false;
+
+        if (q.category != Query.ANY_CATEGORY && rs.categoryCode(row) != q.category)
+            return false;
+
+        int day = rs.epochDay(row);
+        if (day < q.fromDay || day > q.toDay)
+            return false;
+
+        long paise = rs.amountPaise(row);
+        if (paise < q.minPaise || paise > q.maxPaise)
+            return false;
+
+        return q.note == null || rs.note(row).toLowerCase(Locale.ROOT).contains(q.note);
+    }
+
+    /** Whether a single row satisfies {@code q}, without the indexes. Deleted rows never do. */
+    public boolean matches(Query q, int row) {
+
+        if (store.isDeleted(row))
+            return false;
+
+        if (q.category != Query.ANY_CATEGORY && store.categoryCode(row) != q.category)
+            return false;
+
+        int day = store.epochDay(row);
+        if (day < q.fromDay || day > q.toDay)
+            return false;
+
+        long paise = store.amountPaise(row);
+        if (paise < q.minPaise || paise > q.maxPaise)
+            return false;
+
+        return q.note == null || store.note(row).toLowerCase(Locale.ROOT).contains(q.note);
+    }
+
+    // ---------------- maintenance ----------------
+
+    @Override
+    public void rowAdded(TransactionStore s, int row) {
+        unshare();
+        if (notes.isBuilt())
+            notes.add(row);
+
+        // rows are only ever appended, so row == size here, and it sorts after
+        // every row with the same key
+        boolean dateInOrder = dateSorted == size && (size == 0 || dateKey.of(row) >= dateKey.of(byDate[size - 1]));
+        boolean amountInOrder = amountSorted == size && (size == 0 || amountKey.of(row) >= amountKey.of(byAmount[size - 1]));
+        byDate = append(byDate, row);
+        byAmount = append(byAmount, row);
+        size++;
+        if (dateInOrder)
+            dateSorted = size;
+        if (amountInOrder)
+            amountSorted = size;
+        setCategoryBit(s.categoryCode(row), row);
+    }
+
+    @Override
+    public void rowRemoved(TransactionStore s, int row) {
+        unshare();
+
+        // the row stays in the sorted indexes until compaction
+        int cat = s.categoryCode(row);
+        categoryRows[cat]--;
+        categoryBits[cat][row >>> 6] &= ~(1L << row);
+    }
+
+    @Override
+    public void compacted(TransactionStore s, int[] newRow) {
+        // fresh arrays throughout, so a snapshot keeps the old ones
+        shared = false;
+        compactions++;
+
+        // dropping rows keeps the order of the rest, so the sorted part of
+        // each index stays sorted, and the rows waiting after it stay there
+        dateSorted = survivors(byDate, dateSorted, newRow);
+        amountSorted = survivors(byAmount, amountSorted, newRow);
+        byDate = remap(byDate, newRow);
+        byAmount = remap(byAmount, newRow);
+        size = s.size();
+
+        categoryBits = new long[0][];
+        categoryRows = new int[0];
+        for (int row = 0; row < size; row++)
+            setCategoryBit(s.categoryCode(row), row);
+
+        if (notes.isBuilt())
+            notes.compacted(newRow);
+    }
+
+    // the writer's side of snapshot(): copies whatever a snapshot still reads
+    private void unshare() {
+        if (!shared)
+            return;
+        byDate = byDate.clone();
+        byAmount = byAmount.clone();
+        categoryBits = categoryBits.clone();
+        for (int c = 0; c < categoryBits.length; c++)
+            if (categoryBits[c] != null)
+                categoryBits[c] = categoryBits[c].clone();
+        categoryRows = categoryRows.clone();
+        shared = false;
+    }
+
+    private int[] remap(int[] rows, int[] newRow) {
+        int[] out = new int[Math.max(16, size)];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int row = newRow[rows[i]];
+            if (row >= 0)
+                out[n++] = row;
+        }
+        return out;
+    }
+
+    private static int survivors(int[] rows, int n, int[] newRow) {
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (newRow[rows[i]] >= 0)
+                kept++;
+        }
+        return kept;
+    }
+
+    private int[] append(int[] rows, int row) {
+        if (size == rows.length)
+            rows = Arrays.copyOf(rows, Math.max(16, size + (size >> 1)));
+        rows[size] = row;
+        return rows;
+    }
+
+    // merges the rows waiting at the end of the sorted indexes into them
+    private void settle() {
+        if (dateSorted < size) {
+            byDate = merge(byDate, dateSorted, dateKey);
+            dateSorted = size;
+        }
+        if (amountSorted < size) {
+            byAmount = merge(byAmount, amountSorted, amountKey);
+            amountSorted = size;
+        }
+    }
+
+    // Sorts rows[sorted, size) and merges it with rows[0, sorted) into a
+    // fresh array, so a snapshot still reading the old one is not disturbed.
+    // The new rows are all later than the sorted ones, so on equal keys the
+    // sorted ones go first.
+    private int[] merge(int[] rows, int sorted, Key key) {
+        int[] added = Arrays.copyOfRange(rows, sorted, size);
+        sortRows(added, added.length, key);
+
+        int[] out = new int[rows.length];
+        int i = 0, j = 0, n = 0;
+        while (i < sorted && j < added.length)
+            out[n++] = less(key, added[j], key.of(rows[i]), rows[i]) ? added[j++] : rows[i++];
+        while (i < sorted)
+            out[n++] = rows[i++];
+        while (j < added.length)
+            out[n++] = added[j++];
+        return out;
+    }
+
+    private void setCategoryBit(int cat, int row) {
+        if (cat >= categoryBits.length) {
+            int n = cat + 1;
+            categoryBits = Arrays.copyOf(categoryBits, n);
+            categoryRows = Arrays.copyOf(categoryRows, n);
+        }
+        long[] bits = categoryBits[cat];
+        if (bits == null || (row >>> 6) >= bits.length) {
+            bits = bits == null ? new long[Math.max(1, (row >>> 6) + 1)]
+                    : Arrays.copyOf(bits, Math.max((row >>> 6) + 1, bits.length * 2));
+            categoryBits[cat] = bits;
+        }
+        bits[row >>> 6] |= 1L << row;
+        categoryRows[cat]++;
+    }
+
+    // ---------------- sorted index helpers ----------------
+
+    private static int lowerBound(int[] rows, int size, Key key, long k) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.of(rows[mid]) < k)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(int[] rows, int size, Key key, long k) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.of(rows[mid]) <= k)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static int[] identity(int n) {
+        int[] rows = new int[n];
+        for (int i = 0; i < n; i++)
+            rows[i] = i;
+        return rows;
+    }
+
+    /**
+     * Sorts row ids by (key, row). When the key range fits in 32 bits each
+     * entry is packed as (key - min) << 31 | row and sorted as plain longs;
+     * otherwise falls back to a quicksort that looks keys up per compare.
+     */
+    private static void sortRows(int[] rows, int n, Key key) {
+        if (n < 2)
+            return;
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            long k = key.of(rows[i]);
+            min = Math.min(min, k);
+            max = Math.max(max, k);
+        }
+
+        if (max - min < 0 || max - min >= 1L << 32) {
+            sortRows(rows, 0, n - 1, key);
+            return;
+        }
+
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++)
+            packed[i] = (key.of(rows[i]) - min) << 31 | rows[i];
+        Arrays.sort(packed);
+        for (int i = 0; i < n; i++)
+            rows[i] = (int) (packed[i] & Integer.MAX_VALUE);
+    }
+
+    // Quicksort of row ids by (key, row), so equal keys stay in row order
+    private static void sortRows(int[] rows, int lo, int hi, Key key) {
+        while (hi - lo > 16) {
+            int p = rows[(lo + hi) >>> 1];
+            long pk = key.of(p);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (less(key, rows[i], pk, p))
+                    i++;
+                while (less(key, p, key.of(rows[j]), rows[j]))
+                    j--;
+                if (i <= j) {
+                    int t = rows[i];
+                    rows[i++] = rows[j];
+                    rows[j--] = t;
+                }
+            }
+            // recurse into the smaller half, loop on the larger
+            if (j - lo < hi - i) {
+                sortRows(rows, lo, j, key);
+                lo = i;
+            } else {
+                sortRows(rows, i, hi, key);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int r = rows[i];
+            int j = i - 1;
+            while (j >= lo && less(key, r, key.of(rows[j]), rows[j])) {
+                rows[j + 1] = rows[j];
+                j--;
+            }
+            rows[j + 1] = r;
+        }
+    }
+
+    private static boolean less(Key key, int a, long bk, int b) {
+        long ak = key.of(a);
+        return ak < bk || (ak == bk && a < b);
+    }
+}
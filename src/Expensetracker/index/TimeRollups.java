@@ -0,0 +1,163 @@
+package Expensetracker.index;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Debit totals ({@link Symbols#isDebit}) per category per time bucket, at day, ISO week, month and
+ * year granularity, kept in step with a {@link TransactionStore}.
+ *
+ * Buckets are plain ints, ordered by time:
+ * <ul>
+ *   <li>DAY - epoch day</li>
+ *   <li>WEEK - week-based year * 100 + ISO week</li>
+ *   <li>MONTH - year * 12 + (month - 1)</li>
+ *   <li>YEAR - year</li>
+ * </ul>
+ */
+public class TimeRollups implements TransactionStore.Listener {
+
+    public enum Granularity {
+        DAY, WEEK, MONTH, YEAR
+    }
+
+    private static final Granularity[] ALL = Granularity.values();
+
+    // [granularity][category] -> bucket -> {paise, rows}
+    private final List<List<TreeMap<Integer, long[]>>> tables = new ArrayList<>();
+
+    // bucket ids of the last day seen; rows usually arrive in date order
+    private int lastDay = Integer.MIN_VALUE;
+    private final int[] lastBuckets = new int[ALL.length];
+
+    public TimeRollups() {
+        for (int g = 0; g < ALL.length; g++)
+            tables.add(new ArrayList<>());
+    }
+
+    /**
+     * Full recomputation over every live row of {@code store}: daily totals
+     * from {@link Aggregation}, rolled up from there into the coarser buckets.
+     */
+    public static TimeRollups of(TransactionStore store) {
+        TimeRollups r = new TimeRollups();
+        r.add(Aggregation.run(store, Granularity.DAY, null));
+        return r;
+    }
+
+    /**
+     * Adds in daily totals summed elsewhere, e.g. over one page of a ledger
+     * read a page at a time; {@code days} must be grouped by
+     * {@link Granularity#DAY}.
+     */
+    public void add(Aggregation.Groups days) {
+        for (int i = 0; i < days.size(); i++) {
+            if (days.isDebit(i))
+                add(days.category(i), buckets(days.period(i)), days.paise(i), days.rows(i));
+        }
+    }
+
+    /**
+     * Takes out every live row of {@code rows}, e.g. rows deleted from a
+     * ledger read a page at a time, whose store these rollups do not follow.
+     */
+    public void removeRows(TransactionStore rows) {
+        for (int r = 0; r < rows.size(); r++) {
+            if (!rows.isDeleted(r))
+                apply(rows, r, -1);
+        }
+    }
+
+    @Override
+    public void rowAdded(TransactionStore store, int row) {
+        apply(store, row, 1);
+    }
+
+    @Override
+    public void rowRemoved(TransactionStore store, int row) {
+        apply(store, row, -1);
+    }
+
+    private void apply(TransactionStore store, int row, int sign) {
+
+        if (!store.isDebit(row))
+            return;
+
+        add(store.categoryCode(row), buckets(store.epochDay(row)), sign * store.amountPaise(row), sign);
+    }
+
+    private void add(int cat, int[] buckets, long paise, long rows) {
+        for (int g = 0; g < ALL.length; g++) {
+            List<TreeMap<Integer, long[]>> byCat = tables.get(g);
+            while (byCat.size() <= cat)
+                byCat.add(new TreeMap<>());
+
+            TreeMap<Integer, long[]> series = byCat.get(cat);
+            long[] cell = series.computeIfAbsent(buckets[g], k -> new long[2]);
+            cell[0] += paise;
+            cell[1] += rows;
+            if (cell[1] == 0)
+                series.remove(buckets[g]);
+        }
+    }
+
+    private int[] buckets(int epochDay) {
+        if (epochDay != lastDay) {
+            for (Granularity g : ALL)
+                lastBuckets[g.ordinal()] = bucket(g, epochDay);
+            lastDay = epochDay;
+        }
+        return lastBuckets;
+    }
+
+    /** The bucket {@code epochDay} falls in. */
+    public static int bucket(Granularity g, int epochDay) {
+        LocalDate d;
+        switch (g) {
+            case DAY:
+                return epochDay;
+            case WEEK:
+                d = LocalDate.ofEpochDay(epochDay);
+                return d.get(IsoFields.WEEK_BASED_YEAR) * 100 + d.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case MONTH:
+                d = LocalDate.ofEpochDay(epochDay);
+                return d.getYear() * 12 + d.getMonthValue() - 1;
+            default:
+                return LocalDate.ofEpochDay(epochDay).getYear();
+        }
+    }
+
+    /** One past the highest category code with any debit. */
+    public int categoryCount(Granularity g) {
+        return tables.get(g.ordinal()).size();
+    }
+
+    /** Bucket id to total paise for one category, in time order. Read-only. */
+    public NavigableMap<Integer, long[]> series(Granularity g, int category) {
+        List<TreeMap<Integer, long[]>> byCat = tables.get(g.ordinal());
+        if (category >= byCat.size())
+            return Collections.emptyNavigableMap();
+        return Collections.unmodifiableNavigableMap(byCat.get(category));
+    }
+
+    public static String label(Granularity g, int bucket) {
+        switch (g) {
+            case DAY:
+                return LocalDate.ofEpochDay(bucket).toString();
+            case WEEK:
+                return String.format("%d-W%02d", bucket / 100, bucket % 100);
+            case MONTH:
+                return String.format("%d-%02d", bucket / 12, bucket % 12 + 1);
+            default:
+                return String.valueOf(bucket);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package Expensetracker.index;
+
+import Expensetracker.model.TransactionStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inverted index from every lowercase three-character sequence of a note to
+ * the rows whose note contains it. A search string of three or more
+ * characters narrows to the rows that have all of its trigrams; the caller
+ * still confirms each candidate with a real substring check.
+ *
+ * Built on first use, then kept current by {@link FilterEngine}. The build
+ * can also run off the store's lock, from a snapshot ({@link #build}), and be
+ * taken over afterwards ({@link #adopt}).
+ */
+public class TrigramIndex {
+
+    /** Postings for the first {@code size} rows of a store, not yet in use. */
+    static final class Built {
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private final int size;
+
+        private Built(int size) {
+            this.size = size;
+        }
+    }
+
+    private static class Postings {
+        int[] rows = new int[4];
+        int size;
+
+        void add(int row) {
+            if (size > 0 && rows[size - 1] == row)
+                return; // same trigram twice in one note
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+
+    private final TransactionStore store;
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private boolean built;
+
+    public TrigramIndex(TransactionStore store) {
+        this.store = store;
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    private void build() {
+        for (int row = 0; row < store.size(); row++)
+            add(row);
+        built = true;
+    }
+
+    /** The postings of every row of {@code rows}; needs no lock. */
+    static Built build(TransactionStore.Snapshot rows) {
+        Built b = new Built(rows.size());
+        for (int row = 0; row < rows.size(); row++)
+            add(b.postings, row, rows.note(row));
+        return b;
+    }
+
+    /**
+     * Takes over {@code b}, built from this index's store before any rows
+     * were renumbered, and adds the rows appended since. Call under the
+     * store's lock.
+     */
+    void adopt(Built b) {
+        postings.clear();
+        postings.putAll(b.postings);
+        for (int row = b.size; row < store.size(); row++)
+            add(row);
+        built = true;
+    }
+
+    /** Called after {@code row} was appended. */
+    void add(int row) {
+        add(postings, row, store.note(row));
+    }
+
+    private static void add(Map<Long, Postings> postings, int row, String note) {
+        note = note.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + 3 <= note.length(); i++)
+            postings.computeIfAbsent(key(note, i), k -> new Postings()).add(row);
+    }
+
+    /**
+     * Called after the store dropped its deleted rows. Until then a deleted
+     * row stays in the postings; callers confirm candidates anyway.
+     */
+    void compacted(int[] newRow) {
+        for (Postings p : postings.values()) {
+            int n = 0;
+            for (int i = 0; i < p.size; i++) {
+                int row = newRow[p.rows[i]];
+                if (row >= 0)
+                    p.rows[n++] = row;
+            }
+            p.size = n;
+        }
+        postings.values().removeIf(p -> p.size == 0);
+    }
+
+    /**
+     * Rows (ascending) whose note may contain {@code lowerQuery}, or null if
+     * the query is too short to narrow anything down.
+     */
+    public int[] candidates(String lowerQuery) {
+
+        if (lowerQuery.length() < 3)
+            return null;
+        if (!built)
+            build();
+
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= lowerQuery.length(); i++) {
+            Postings p = postings.get(key(lowerQuery, i));
+            if (p == null || p.size == 0)
+                return new int[0];
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        // walk the shortest list, probing the others by binary search
+        Postings first = lists.get(0);
+        int[] out = new int[first.size];
+        int n = 0;
+        int[] from = new int[lists.size()];
+
+        outer:
+        for (int i = 0; i < first.size; i++) {
+            int row = first.rows[i];
+            for (int l = 1; l < lists.size(); l++) {
+                Postings p = lists.get(l);
+                int at = Arrays.binarySearch(p.rows, from[l], p.size, row);
+                if (at < 0) {
+                    from[l] = -at - 1;
+                    continue outer;
+                }
+                from[l] = at + 1;
+            }
+            out[n++] = row;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long key(String s, int i) {
+        return (long) s.charAt(i) << 32 | (long) s.charAt(i + 1) << 16 | s.charAt(i + 2);
+    }
+}
@@ -0,0 +1,36 @@
+package Expensetracker.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A value read when asked for, e.g. a queue depth, next to the timers.
+ * The source can be swapped, e.g. when the queue it reads is replaced.
+ */
+public class Gauge implements GaugeMBean {
+
+    private final String name;
+    private volatile LongSupplier source = () -> 0;
+
+    Gauge(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Reads {@code source} from now on. */
+    public void set(LongSupplier source) {
+        this.source = source;
+    }
+
+    @Override
+    public long getValue() {
+        return source.getAsLong();
+    }
+
+    @Override
+    public String toString() {
+        return name + " value=" + getValue();
+    }
+}
@@ -0,0 +1,7 @@
+package Expensetracker.metrics;
+
+/** JMX view of a {@link Gauge}. */
+public interface GaugeMBean {
+
+    long getValue();
+}
@@ -0,0 +1,141 @@
+package Expensetracker.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot-path timers, published as MBeans under {@code Expensetracker:type=Timer},
+ * and gauges under {@code Expensetracker:type=Gauge}.
+ *
+ * Off unless the JVM is started with one of:
+ * <ul>
+ *   <li>{@code -Dexpensetracker.metrics=true} - record and publish over JMX</li>
+ *   <li>{@code -Dexpensetracker.metrics.log=FILE} - the same, and append
+ *       every timer to FILE each {@code expensetracker.metrics.interval}
+ *       seconds (default 60) and at exit</li>
+ * </ul>
+ *
+ * {@link #ENABLED} is a constant, so while metrics are off the JIT drops
+ * the timing calls entirely: {@link #start()} is 0 and {@link Timer#stop}
+ * returns at once.
+ */
+public final class Metrics {
+
+    private static final String LOG_PROPERTY = "expensetracker.metrics.log";
+
+    public static final boolean ENABLED = Boolean.getBoolean("expensetracker.metrics")
+            || System.getProperty(LOG_PROPERTY) != null;
+
+    private static final Map<String, Timer> timers = new TreeMap<>();
+    private static final Map<String, Gauge> gauges = new TreeMap<>();
+
+    static {
+        String log = System.getProperty(LOG_PROPERTY);
+        if (log != null)
+            startLog(Paths.get(log), Long.getLong("expensetracker.metrics.interval", 60));
+    }
+
+    private Metrics() {
+    }
+
+    /** Start time for {@link Timer#stop}; 0 while metrics are off. */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** The timer called {@code name}, created (and published) on first use. */
+    public static synchronized Timer timer(String name) {
+        Timer t = timers.get(name);
+        if (t == null) {
+            t = new Timer(name);
+            timers.put(name, t);
+            if (ENABLED)
+                register(t);
+        }
+        return t;
+    }
+
+    public static synchronized List<Timer> timers() {
+        return new ArrayList<>(timers.values());
+    }
+
+    /** The gauge called {@code name}, created (and published) on first use; reads 0 until set. */
+    public static synchronized Gauge gauge(String name) {
+        Gauge g = gauges.get(name);
+        if (g == null) {
+            g = new Gauge(name);
+            gauges.put(name, g);
+            if (ENABLED)
+                register(g, "Gauge", g.name());
+        }
+        return g;
+    }
+
+    public static synchronized List<Gauge> gauges() {
+        return new ArrayList<>(gauges.values());
+    }
+
+    private static void register(Timer t) {
+        register(t, "Timer", t.name());
+    }
+
+    private static void register(Object mbean, String type, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("Expensetracker:type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(on))
+                server.registerMBean(mbean, on);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ---------------- log ----------------
+
+    /** Appends one line per timer that has recorded anything, and one per gauge. */
+    public static void dump(Path file) throws IOException {
+        String now = Instant.now().toString();
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            for (Timer t : timers()) {
+                if (t.getCount() > 0)
+                    pw.println(now + " " + t);
+            }
+            for (Gauge g : gauges())
+                pw.println(now + " " + g);
+        }
+    }
+
+    private static void startLog(Path file, long intervalSeconds) {
+        ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        Runnable write = () -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        };
+        logger.scheduleAtFixedRate(write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(write, "metrics-log-final"));
+    }
+}
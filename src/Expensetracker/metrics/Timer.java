@@ -0,0 +1,160 @@
+package Expensetracker.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram plus row and byte counters for one operation.
+ *
+ * <pre>
+ *   long t0 = Metrics.start();
+ *   ...
+ *   TIMER.stop(t0, rows, bytes);
+ * </pre>
+ *
+ * Latencies go into power-of-two buckets of microseconds, so percentiles
+ * are upper bounds within a factor of two. Safe to call from any thread.
+ * While metrics are off, {@link #stop} returns straight away.
+ */
+public class Timer implements TimerMBean {
+
+    // bucket b: under 2^b us; the last one takes everything longer (~18 min)
+    static final int BUCKETS = 31;
+
+    private final String name;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void stop(long startNanos) {
+        stop(startNanos, 0, 0);
+    }
+
+    public void stop(long startNanos, long rowCount) {
+        stop(startNanos, rowCount, 0);
+    }
+
+    /** Records one call that began at {@code startNanos} (from {@link Metrics#start()}). */
+    public void stop(long startNanos, long rowCount, long byteCount) {
+        if (!Metrics.ENABLED)
+            return;
+
+        long nanos = System.nanoTime() - startNanos;
+        long micros = nanos / 1000;
+        int b = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+        histogram.incrementAndGet(b);
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        if (rowCount != 0)
+            rows.add(rowCount);
+        if (byteCount != 0)
+            bytes.add(byteCount);
+    }
+
+    // ---------------- TimerMBean ----------------
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentile(0.90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentile(0.99);
+    }
+
+    // upper bound of the bucket holding the p-th call, capped at the max seen
+    private double percentile(double p) {
+        long[] h = getHistogram();
+        long n = 0;
+        for (long c : h)
+            n += c;
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int b = 0; b < h.length; b++) {
+            seen += h[b];
+            if (seen >= rank)
+                return Math.min((1L << b) / 1e3, getMaxMillis());
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public long[] getHistogram() {
+        long[] h = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++)
+            h[b] = histogram.get(b);
+        return h;
+    }
+
+    @Override
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++)
+            histogram.set(b, 0);
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        rows.reset();
+        bytes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s count=%d rows=%d bytes=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                name, getCount(), getRows(), getBytes(), getMeanMillis(),
+                getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+    }
+}
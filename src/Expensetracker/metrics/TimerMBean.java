@@ -0,0 +1,28 @@
+package Expensetracker.metrics;
+
+/** JMX view of a {@link Timer}. Times are in milliseconds. */
+public interface TimerMBean {
+
+    long getCount();
+
+    long getRows();
+
+    long getBytes();
+
+    double getTotalMillis();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    /** Calls per latency bucket; bucket b holds calls under 2^b microseconds. */
+    long[] getHistogram();
+
+    void reset();
+}
@@ -0,0 +1,135 @@
+package Expensetracker.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Maps a low-cardinality string column (category, type, method) to dense
+ * int codes. Codes are assigned in first-seen order and never reused, and
+ * {@link #intern(String)} hands back one shared String per value.
+ *
+ * Lookups are lock-free; only the first sighting of a value takes the lock,
+ * so the parallel CSV loader can share a table across its workers. Values
+ * can also be looked up by their UTF-8 bytes ({@link #code(byte[], int, int)}),
+ * so a loader need not make a String per field.
+ */
+public class SymbolTable {
+
+    // UTF-8 of every value, and an open-addressed table of code + 1 by a
+    // hash of those bytes; replaced, never changed, on each new value
+    private static final class ByteIndex {
+        final byte[][] utf8;
+        final int[] slots;
+
+        ByteIndex(byte[][] utf8, int size) {
+            this.utf8 = utf8;
+            slots = new int[Integer.highestOneBit(Math.max(size, 4) * 2) * 2];
+            int mask = slots.length - 1;
+            for (int code = 0; code < size; code++) {
+                int i = hash(utf8[code], 0, utf8[code].length) & mask;
+                while (slots[i] != 0)
+                    i = (i + 1) & mask;
+                slots[i] = code + 1;
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private volatile String[] values = new String[16];
+    private volatile int size;
+    private volatile ByteIndex bytes = new ByteIndex(new byte[0][], 0);
+
+    public SymbolTable(String... seed) {
+        for (String s : seed)
+            code(s);
+    }
+
+    public int code(String value) {
+        Integer c = codes.get(value);
+        return c != null ? c : insert(value);
+    }
+
+    private synchronized int insert(String value) {
+        Integer c = codes.get(value);
+        if (c != null)
+            return c;
+
+        int code = size;
+        if (code == values.length)
+            values = Arrays.copyOf(values, code * 2);
+        values[code] = value;
+        size = code + 1;
+        byte[][] utf8 = Arrays.copyOf(bytes.utf8, code + 1);
+        utf8[code] = value.getBytes(StandardCharsets.UTF_8);
+        bytes = new ByteIndex(utf8, code + 1);
+        // last, so whoever finds the code can also look up its bytes
+        codes.put(value, code);
+
+        for (Consumer<String> l : listeners)
+            l.accept(value);
+        return code;
+    }
+
+    /**
+     * As {@link #code(String)} for the value whose UTF-8 encoding is
+     * {@code b[from, from + len)}. Only a value seen for the first time
+     * is turned into a String.
+     */
+    public int code(byte[] b, int from, int len) {
+        ByteIndex ix = bytes;
+        int mask = ix.slots.length - 1;
+        for (int i = hash(b, from, len) & mask; ix.slots[i] != 0; i = (i + 1) & mask) {
+            int code = ix.slots[i] - 1;
+            if (Arrays.equals(ix.utf8[code], 0, ix.utf8[code].length, b, from, from + len))
+                return code;
+        }
+        return code(new String(b, from, len, StandardCharsets.UTF_8));
+    }
+
+    /** Whether {@code code} stands for the value encoded in {@code b[from, from + len)}. */
+    public boolean is(int code, byte[] b, int from, int len) {
+        byte[] v = bytes.utf8[code];
+        return Arrays.equals(v, 0, v.length, b, from, from + len);
+    }
+
+    private static int hash(byte[] b, int from, int len) {
+        int h = 0;
+        for (int i = from; i < from + len; i++)
+            h = 31 * h + b[i];
+        return h ^ (h >>> 16);
+    }
+
+    /** Code for an existing value, or -1 if it has never been seen. */
+    public int find(String value) {
+        Integer c = codes.get(value);
+        return c == null ? -1 : c;
+    }
+
+    public String value(int code) {
+        return values[code];
+    }
+
+    /** The shared instance for {@code value}, registering it if new. */
+    public String intern(String value) {
+        return value(code(value));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Values in code order. */
+    public List<String> values() {
+        return List.of(Arrays.copyOf(values, size));
+    }
+
+    /** Called with each value the first time it is seen, on the thread that saw it. */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,35 @@
+package Expensetracker.model;
+
+/**
+ * Process-wide symbol tables for the low-cardinality transaction columns.
+ * Every Transaction and TransactionStore codes its values through these, so
+ * equal values share one String and compare as ints.
+ */
+public final class Symbols {
+
+    public static final SymbolTable CATEGORIES = new SymbolTable(
+            "Food", "Education", "Transport",
+            "Shopping", "Bills", "General");
+
+    public static final SymbolTable TYPES = new SymbolTable("Debit", "Credit");
+    public static final int DEBIT = 0;
+    public static final int CREDIT = 1;
+
+    /**
+     * The debit rule every total goes by: a row is a debit only if its type
+     * is exactly "Debit", and a credit only if it is "Credit". Rows of any
+     * other type count as neither.
+     */
+    public static boolean isDebit(int typeCode) {
+        return typeCode == DEBIT;
+    }
+
+    public static boolean isCredit(int typeCode) {
+        return typeCode == CREDIT;
+    }
+
+    public static final SymbolTable METHODS = new SymbolTable("Cash", "UPI");
+
+    private Symbols() {
+    }
+}
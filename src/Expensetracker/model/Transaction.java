@@ -0,0 +1,92 @@
+package Expensetracker.model;
+
+import java.time.LocalDate;
+
+public class Transaction {
+    private final LocalDate date;
+    private final String category, type, method, note;
+    private final int categoryCode, typeCode, methodCode;
+    private final double amount;
+    private long id;
+
+    public Transaction(LocalDate d, String c,
+            String t, String m,
+            double a, String n) {
+        this(d,
+                Symbols.CATEGORIES.code(c),
+                Symbols.TYPES.code(t),
+                Symbols.METHODS.code(m),
+                a, n);
+    }
+
+    // Row view built from already-coded columns
+    Transaction(long id, LocalDate d, int c, int t, int m, double a, String n) {
+        this(d, c, t, m, a, n);
+        this.id = id;
+    }
+
+    private Transaction(LocalDate d, int c, int t, int m, double a, String n) {
+        date = d;
+        categoryCode = c;
+        typeCode = t;
+        methodCode = m;
+        category = Symbols.CATEGORIES.value(c);
+        type = Symbols.TYPES.value(t);
+        method = Symbols.METHODS.value(m);
+        amount = a;
+        note = n;
+    }
+
+    /** The store's id for this transaction; 0 until it has been added to one. */
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getDateStr() {
+        return date.toString();
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getCategoryCode() {
+        return categoryCode;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getTypeCode() {
+        return typeCode;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public int getMethodCode() {
+        return methodCode;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public boolean isCredit() {
+        return Symbols.isCredit(typeCode);
+    }
+}
@@ -0,0 +1,735 @@
+package Expensetracker.model;
+
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Column-oriented ledger storage. One primitive array per field instead of
+ * one object per row:
+ *
+ * <ul>
+ *   <li>date as epoch day ({@code int})</li>
+ *   <li>amount as fixed-point paise ({@code long})</li>
+ *   <li>category, type and method as {@link Symbols} codes ({@code int})</li>
+ *   <li>note as a slice of a shared UTF-8 byte arena</li>
+ * </ul>
+ *
+ * Rows are addressed by position. {@link #get(int)} materializes a
+ * short-lived {@link Transaction} for callers that want an object.
+ * Indexes that need to follow the data register a {@link Listener}.
+ *
+ * Every row also has an id, handed out in ascending order as rows are
+ * appended, so {@link #slotOf(long)} is a lookup into the id column rather
+ * than a search of the rows. Removing a row only marks it deleted (a
+ * tombstone): it keeps its position, and readers skip it with
+ * {@link #isDeleted(int)}. {@link #compact()} later drops the deleted rows
+ * in one pass.
+ *
+ * Changes come from one thread (the FX thread). Every add and remove holds
+ * the write lock, listeners included, so a background reader that takes
+ * {@link #readLock()} sees the rows and every index frozen for as long as
+ * it holds it. {@link #version()} tells it afterwards whether its answer
+ * is still current. A reader that needs longer takes a {@link #snapshot()}
+ * under the lock and lets go: rows are only ever appended past the end, and
+ * compaction writes fresh columns, so what a snapshot holds never changes.
+ */
+public class TransactionStore {
+
+    /**
+     * The rows as they were at one version of the store, for reading on
+     * another thread without holding the lock. Costs a copy of the deleted
+     * bits, one bit per row; the columns are shared.
+     */
+    public static final class Snapshot {
+        private final int size;
+        private final int deleted;
+        private final long version;
+        private final int[] day;
+        private final long[] amount;
+        private final int[] category;
+        private final int[] noteStart;
+        private final int[] noteLength;
+        private final byte[] notes;
+        private final long[] deletedBits;
+
+        private Snapshot(TransactionStore st) {
+            size = st.size;
+            deleted = st.deleted;
+            version = st.version;
+            day = st.day;
+            amount = st.amount;
+            category = st.category;
+            noteStart = st.noteStart;
+            noteLength = st.noteLength;
+            notes = st.notes;
+            deletedBits = Arrays.copyOf(st.deletedBits, words(st.size));
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int deletedCount() {
+            return deleted;
+        }
+
+        /** The store's {@link TransactionStore#version()} when this was taken. */
+        public long version() {
+            return version;
+        }
+
+        public boolean isDeleted(int row) {
+            return (deletedBits[row >>> 6] & (1L << row)) != 0;
+        }
+
+        public int epochDay(int row) {
+            return day[row];
+        }
+
+        public long amountPaise(int row) {
+            return amount[row];
+        }
+
+        public int categoryCode(int row) {
+            return category[row];
+        }
+
+        public String note(int row) {
+            return new String(notes, noteStart[row], noteLength[row], StandardCharsets.UTF_8);
+        }
+    }
+
+    public interface Listener {
+        /** Called after {@code row} has been appended. */
+        void rowAdded(TransactionStore store, int row);
+
+        /** Called before {@code row} is marked deleted, while it still reads as live. */
+        void rowRemoved(TransactionStore store, int row);
+
+        /**
+         * Called after {@link #compact()} has dropped the deleted rows.
+         * {@code newRow[old]} is where an old row is now, or -1 if it was dropped.
+         */
+        default void compacted(TransactionStore store, int[] newRow) {
+        }
+    }
+
+    private static final Timer COMPACT = Metrics.timer("compact.store");
+
+    private final List<Listener> listeners = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long version;
+
+    private int size;
+    private long[] id = new long[16];
+    private long nextId = 1;
+    private int[] day = new int[16];
+    private long[] amount = new long[16];
+    private int[] category = new int[16];
+    private int[] type = new int[16];
+    private int[] method = new int[16];
+    private int[] noteStart = new int[16];
+    private int[] noteLength = new int[16];
+
+    private byte[] notes = new byte[256];
+    private int notesUsed;
+
+    // one bit per row, set once the row is deleted
+    private long[] deletedBits = new long[1];
+    private int deleted;
+
+    /**
+     * A store over ready-made columns, e.g. from a snapshot file. The arrays
+     * are taken over, not copied; every column has one entry per row.
+     * The rows get ids 1..n in order.
+     */
+    public static TransactionStore ofColumns(int[] day, long[] amount,
+            int[] category, int[] type, int[] method,
+            int[] noteStart, int[] noteLength, byte[] notes) {
+
+        TransactionStore st = new TransactionStore();
+        st.size = day.length;
+        st.day = day;
+        st.amount = amount;
+        st.category = category;
+        st.type = type;
+        st.method = method;
+        st.noteStart = noteStart;
+        st.noteLength = noteLength;
+        st.notes = notes;
+        st.notesUsed = notes.length;
+        st.deletedBits = new long[words(st.size)];
+        st.id = new long[st.size];
+        st.renumberIds();
+        return st;
+    }
+
+    public static long toPaise(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double fromPaise(long paise) {
+        return paise / 100.0;
+    }
+
+    /** Number of rows, deleted ones included. */
+    public int size() {
+        return size;
+    }
+
+    /** Number of rows that are not deleted. */
+    public int liveSize() {
+        return size - deleted;
+    }
+
+    /** Number of deleted rows waiting for {@link #compact()}. */
+    public int deletedCount() {
+        return deleted;
+    }
+
+    /** Bumped by every add, remove and compaction. */
+    public long version() {
+        return version;
+    }
+
+    /** Held by background readers; blocks changes (and their listeners) meanwhile. */
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    /** The rows as they are now, readable after the lock is let go. */
+    public Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            return new Snapshot(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Appends {@code t} under a new id, which is also set on {@code t}. */
+    public int add(Transaction t) {
+        lock.writeLock().lock();
+        try {
+            int row = append(t.getDate().toEpochDay(),
+                    t.getCategoryCode(),
+                    t.getTypeCode(),
+                    t.getMethodCode(),
+                    toPaise(t.getAmount()),
+                    t.getNote());
+            t.setId(id[row]);
+            return row;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int append(long epochDay, int cat, int typ, int meth, long paise, String note) {
+
+        byte[] n = note == null ? new byte[0] : note.getBytes(StandardCharsets.UTF_8);
+        return append(epochDay, cat, typ, meth, paise, n, 0, n.length);
+    }
+
+    /** Appends a row whose note is already UTF-8 encoded, as the CSV reader has it. */
+    public int add(int epochDay, String cat, String typ, String meth, long paise,
+            byte[] note, int noteFrom, int noteLen) {
+        lock.writeLock().lock();
+        try {
+            return append(epochDay,
+                    Symbols.CATEGORIES.code(cat),
+                    Symbols.TYPES.code(typ),
+                    Symbols.METHODS.code(meth),
+                    paise,
+                    note, noteFrom, noteLen);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** As above, with the columns already coded through {@link Symbols}. */
+    public int add(int epochDay, int cat, int typ, int meth, long paise,
+            byte[] note, int noteFrom, int noteLen) {
+        lock.writeLock().lock();
+        try {
+            return append(epochDay, cat, typ, meth, paise, note, noteFrom, noteLen);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a row under an id of the caller's, e.g. a database key. Ids
+     * must keep ascending: {@code txId} has to be above every id handed out
+     * so far.
+     */
+    public int add(long txId, int epochDay, String cat, String typ, String meth, long paise,
+            byte[] note, int noteFrom, int noteLen) {
+        if (txId < nextId)
+            throw new IllegalArgumentException("Id " + txId + " is not above " + (nextId - 1));
+
+        lock.writeLock().lock();
+        try {
+            nextId = txId;
+            return add(epochDay, cat, typ, meth, paise, note, noteFrom, noteLen);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Makes sure ids handed out from now on are at least {@code next}. */
+    public void reserveIds(long next) {
+        nextId = Math.max(nextId, next);
+    }
+
+    private int append(long epochDay, int cat, int typ, int meth, long paise,
+            byte[] note, int noteFrom, int noteLen) {
+
+        ensureCapacity(size + 1);
+        ensureArena(notesUsed + noteLen);
+
+        int row = size++;
+        id[row] = nextId++;
+        day[row] = (int) epochDay;
+        amount[row] = paise;
+        category[row] = cat;
+        type[row] = typ;
+        method[row] = meth;
+        noteStart[row] = notesUsed;
+        noteLength[row] = noteLen;
+
+        System.arraycopy(note, noteFrom, notes, notesUsed, noteLen);
+        notesUsed += noteLen;
+        version++;
+
+        for (Listener l : listeners)
+            l.rowAdded(this, row);
+        return row;
+    }
+
+    /**
+     * One store of every live row of {@code parts}, in order and under new
+     * ids. It is sized for all of them up front, so each row is copied once.
+     */
+    public static TransactionStore concat(List<TransactionStore> parts) {
+        int rows = 0, noteBytes = 0;
+        for (TransactionStore p : parts) {
+            rows += p.liveSize();
+            noteBytes += p.notesUsed;
+        }
+
+        TransactionStore st = new TransactionStore();
+        st.ensureCapacity(rows);
+        st.ensureArena(noteBytes);
+        for (TransactionStore p : parts)
+            st.addAll(p);
+        return st;
+    }
+
+    /**
+     * Appends every live row of {@code other} under new ids; codes are
+     * shared, so no translation.
+     */
+    public void addAll(TransactionStore other) {
+
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(size + other.liveSize());
+            for (int i = 0; i < other.size; i++) {
+                if (other.isDeleted(i))
+                    continue;
+                append(other.day[i],
+                        other.category[i],
+                        other.type[i],
+                        other.method[i],
+                        other.amount[i],
+                        other.notes, other.noteStart[i], other.noteLength[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a row deleted. It stays where it is, and readable, until
+     * {@link #compact()}; removing a row that is already deleted does nothing.
+     */
+    public void remove(int row) {
+        checkRow(row);
+
+        lock.writeLock().lock();
+        try {
+            if (tombstone(row))
+                version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Marks every one of {@code rows} deleted, as a single change. */
+    public void removeAll(int[] rows) {
+        for (int row : rows)
+            checkRow(row);
+
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (int row : rows)
+                changed |= tombstone(row);
+            if (changed)
+                version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean tombstone(int row) {
+        if (isDeleted(row))
+            return false;
+
+        for (Listener l : listeners)
+            l.rowRemoved(this, row);
+        deletedBits[row >>> 6] |= 1L << row;
+        deleted++;
+        return true;
+    }
+
+    public boolean isDeleted(int row) {
+        return (deletedBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Drops every deleted row into fresh columns, the rest in order, and
+     * rebuilds the note arena without their bytes; the old columns are left
+     * as they were for any {@link Snapshot} of them. Returns the old-to-new row map
+     * given to {@link Listener#compacted}, or null if nothing was deleted.
+     * Ids do not change.
+     */
+    public int[] compact() {
+
+        lock.writeLock().lock();
+        try {
+            if (deleted == 0)
+                return null;
+
+            long t0 = Metrics.start();
+            int dropped = deleted;
+            int arenaBefore = notesUsed;
+
+            int bytes = 0;
+            for (int row = 0; row < size; row++) {
+                if (!isDeleted(row))
+                    bytes += noteLength[row];
+            }
+
+            int[] newRow = new int[size];
+            int cap = Math.max(16, size - deleted);
+            long[] id2 = new long[cap];
+            int[] day2 = new int[cap];
+            long[] amount2 = new long[cap];
+            int[] category2 = new int[cap];
+            int[] type2 = new int[cap];
+            int[] method2 = new int[cap];
+            int[] noteStart2 = new int[cap];
+            int[] noteLength2 = new int[cap];
+            byte[] arena = new byte[Math.max(256, bytes)];
+            int n = 0, used = 0;
+
+            for (int row = 0; row < size; row++) {
+                if (isDeleted(row)) {
+                    newRow[row] = -1;
+                    continue;
+                }
+                newRow[row] = n;
+                id2[n] = id[row];
+                day2[n] = day[row];
+                amount2[n] = amount[row];
+                category2[n] = category[row];
+                type2[n] = type[row];
+                method2[n] = method[row];
+                System.arraycopy(notes, noteStart[row], arena, used, noteLength[row]);
+                noteStart2[n] = used;
+                noteLength2[n] = noteLength[row];
+                used += noteLength[row];
+                n++;
+            }
+
+            size = n;
+            id = id2;
+            day = day2;
+            amount = amount2;
+            category = category2;
+            type = type2;
+            method = method2;
+            noteStart = noteStart2;
+            noteLength = noteLength2;
+            notes = arena;
+            notesUsed = used;
+            deletedBits = new long[words(cap)];
+            deleted = 0;
+            version++;
+
+            for (Listener l : listeners)
+                l.compacted(this, newRow);
+            COMPACT.stop(t0, dropped, arenaBefore - notesUsed);
+            return newRow;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gives the rows ids 1..n in order, as a reload of a CSV written from
+     * this store would. For after a checkpoint, once nothing is deleted.
+     */
+    public void renumberIds() {
+        for (int row = 0; row < size; row++)
+            id[row] = row + 1;
+        nextId = size + 1;
+    }
+
+    /**
+     * A copy of the live rows, ids included, e.g. to write out on another
+     * thread while this store keeps changing.
+     */
+    public TransactionStore copy() {
+
+        lock.readLock().lock();
+        try {
+            int n = liveSize();
+            int bytes = 0;
+            for (int row = 0; row < size; row++) {
+                if (!isDeleted(row))
+                    bytes += noteLength[row];
+            }
+
+            TransactionStore c = new TransactionStore();
+            c.ensureCapacity(n);
+            c.notes = new byte[Math.max(256, bytes)];
+            for (int row = 0; row < size; row++) {
+                if (isDeleted(row))
+                    continue;
+                int to = c.size++;
+                c.id[to] = id[row];
+                c.day[to] = day[row];
+                c.amount[to] = amount[row];
+                c.category[to] = category[row];
+                c.type[to] = type[row];
+                c.method[to] = method[row];
+                c.noteStart[to] = c.notesUsed;
+                c.noteLength[to] = noteLength[row];
+                System.arraycopy(notes, noteStart[row], c.notes, c.notesUsed, noteLength[row]);
+                c.notesUsed += noteLength[row];
+            }
+            c.nextId = nextId;
+            return c;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------- ids ----------------
+
+    public long id(int row) {
+        return id[row];
+    }
+
+    /** Row of the live transaction {@code txId}, or -1 if there is none. */
+    public int slotOf(long txId) {
+        int row = find(txId);
+        return row >= 0 && !isDeleted(row) ? row : -1;
+    }
+
+    /** Rows of the live transactions {@code ids}, failing on any that is not there. */
+    public int[] slotsOf(long[] ids) {
+        int[] rows = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            rows[i] = slotOf(ids[i]);
+            if (rows[i] < 0)
+                throw new IllegalArgumentException("No transaction with id " + ids[i]);
+        }
+        return rows;
+    }
+
+    // ids ascend with the rows, and with no gaps the row is just an offset
+    private int find(long txId) {
+        if (size == 0)
+            return -1;
+
+        long guess = txId - id[0];
+        if (guess >= 0 && guess < size && id[(int) guess] == txId)
+            return (int) guess;
+
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id[mid] < txId)
+                lo = mid + 1;
+            else if (id[mid] > txId)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /** The {@code n}-th live row, counting from 0. */
+    public int liveRow(int n) {
+        if (n < 0 || n >= liveSize())
+            throw new IndexOutOfBoundsException("Live row " + n + " of " + liveSize());
+        if (deleted == 0)
+            return n;
+
+        int w = 0;
+        while (true) {
+            int live = Math.min(64, size - (w << 6)) - Long.bitCount(deletedBits[w]);
+            if (n < live)
+                break;
+            n -= live;
+            w++;
+        }
+        for (int row = w << 6; ; row++) {
+            if (!isDeleted(row) && n-- == 0)
+                return row;
+        }
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    public Transaction get(int row) {
+        checkRow(row);
+        return new Transaction(
+                id[row],
+                date(row),
+                category[row],
+                type[row],
+                method[row],
+                amount(row),
+                note(row));
+    }
+
+    // ---------------- column access ----------------
+
+    public int epochDay(int row) {
+        return day[row];
+    }
+
+    public LocalDate date(int row) {
+        return LocalDate.ofEpochDay(day[row]);
+    }
+
+    public long amountPaise(int row) {
+        return amount[row];
+    }
+
+    public double amount(int row) {
+        return fromPaise(amount[row]);
+    }
+
+    public int categoryCode(int row) {
+        return category[row];
+    }
+
+    public String category(int row) {
+        return Symbols.CATEGORIES.value(category[row]);
+    }
+
+    public int typeCode(int row) {
+        return type[row];
+    }
+
+    public String type(int row) {
+        return Symbols.TYPES.value(type[row]);
+    }
+
+    public boolean isDebit(int row) {
+        return Symbols.isDebit(type[row]);
+    }
+
+    public boolean isCredit(int row) {
+        return Symbols.isCredit(type[row]);
+    }
+
+    public int methodCode(int row) {
+        return method[row];
+    }
+
+    public String method(int row) {
+        return Symbols.METHODS.value(method[row]);
+    }
+
+    public String note(int row) {
+        return new String(notes, noteStart[row], noteLength[row], StandardCharsets.UTF_8);
+    }
+
+    /** Length of the note in UTF-8 bytes. */
+    public int noteLength(int row) {
+        return noteLength[row];
+    }
+
+    /** Copies the note's UTF-8 bytes into {@code dst} at {@code at}. */
+    public void copyNote(int row, byte[] dst, int at) {
+        System.arraycopy(notes, noteStart[row], dst, at, noteLength[row]);
+    }
+
+    // ---------------- growth ----------------
+
+    /** Drops spare capacity, e.g. once a bulk load is finished. */
+    public void trimToSize() {
+        if (day.length == size && notes.length == notesUsed)
+            return; // e.g. a store from concat(), already the exact size
+        id = Arrays.copyOf(id, size);
+        day = Arrays.copyOf(day, size);
+        amount = Arrays.copyOf(amount, size);
+        category = Arrays.copyOf(category, size);
+        type = Arrays.copyOf(type, size);
+        method = Arrays.copyOf(method, size);
+        noteStart = Arrays.copyOf(noteStart, size);
+        noteLength = Arrays.copyOf(noteLength, size);
+        notes = Arrays.copyOf(notes, notesUsed);
+        deletedBits = Arrays.copyOf(deletedBits, words(size));
+    }
+
+    private void ensureCapacity(int min) {
+        if (min <= day.length)
+            return;
+
+        int cap = Math.max(Math.max(min, 16), day.length + (day.length >> 1));
+        id = Arrays.copyOf(id, cap);
+        day = Arrays.copyOf(day, cap);
+        amount = Arrays.copyOf(amount, cap);
+        category = Arrays.copyOf(category, cap);
+        type = Arrays.copyOf(type, cap);
+        method = Arrays.copyOf(method, cap);
+        noteStart = Arrays.copyOf(noteStart, cap);
+        noteLength = Arrays.copyOf(noteLength, cap);
+        deletedBits = Arrays.copyOf(deletedBits, words(cap));
+    }
+
+    private static int words(int rows) {
+        return Math.max(1, (rows + 63) >>> 6);
+    }
+
+    private void ensureArena(int min) {
+        if (min > notes.length)
+            notes = Arrays.copyOf(notes, Math.max(min, Math.max(256, notes.length * 2)));
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+    }
+}
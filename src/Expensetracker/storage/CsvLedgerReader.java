@@ -0,0 +1,346 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.model.SymbolTable;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads expenses.csv in one pass over a memory-mapped buffer: the budget line,
+ * the header and every row, followed by the balance over the rows.
+ *
+ * Rows go straight into a {@link TransactionStore}: fields are cut at commas
+ * by hand instead of String.split, dates are parsed from digits to an epoch
+ * day, category, type and method are coded from their bytes through the
+ * {@link Symbols} tables, notes are copied as raw bytes, and plain decimal
+ * amounts skip Double.parseDouble. A row makes no Strings at all.
+ */
+public class CsvLedgerReader {
+
+    public static class Result {
+        public boolean hasBudget;
+        public double budget;
+        public double balance;
+        public TransactionStore store = new TransactionStore();
+        public BalanceCheckpoints balances;
+        public int skipped;
+
+        // budget plus the net of every row, summed in paise
+        void settle() {
+            if (balances == null)
+                balances = BalanceCheckpoints.of(store);
+            balance = TransactionStore.fromPaise(TransactionStore.toPaise(budget) + balances.netPaise());
+        }
+    }
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Files smaller than this are not worth splitting; the tests lower both
+    // so small files take the parallel path too
+    static long parallelThreshold = 8L << 20;
+    // Ranges are split until they are at most this many bytes
+    static int chunkBytes = 1 << 20;
+
+    private final int[] cut = new int[5];
+    // last symbol code seen in the category, type and method columns
+    private final int[] lastCode = { -1, -1, -1 };
+    private int lastDateKey = -1, lastEpochDay;
+    private byte[] line = new byte[256];
+    private int skipped;
+
+    /** Parses in parallel when the file is large enough to benefit. */
+    public static Result read(Path csv) throws IOException {
+        return readFile(csv, Files.exists(csv) && Files.size(csv) >= parallelThreshold);
+    }
+
+    public static Result readSequential(Path csv) throws IOException {
+        return readFile(csv, false);
+    }
+
+    /**
+     * Splits the rows at line boundaries and parses the pieces on the common
+     * fork-join pool. Rows come back in file order and the balance is folded
+     * over them in that order, so the result is identical to readSequential.
+     */
+    public static Result readParallel(Path csv) throws IOException {
+        return readFile(csv, true);
+    }
+
+    private static Result readFile(Path csv, boolean parallel) throws IOException {
+
+        Result r = new Result();
+        if (!Files.exists(csv))
+            return r;
+
+        try (FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ)) {
+
+            long size = ch.size();
+            if (size == 0)
+                return r;
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Ledger too large to map: " + size + " bytes");
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size;
+
+            // BUDGET line
+            CsvLedgerReader reader = new CsvLedgerReader();
+            int eol = lineEnd(buf, 0, end);
+            int len = reader.copyLine(buf, 0, eol);
+            String first = new String(reader.line, 0, len, StandardCharsets.UTF_8);
+            if (first.startsWith("BUDGET")) {
+                r.budget = Double.parseDouble(first.substring(first.indexOf(',') + 1).trim());
+                r.hasBudget = true;
+                eol = lineEnd(buf, Math.min(eol + 1, end), end);
+            }
+
+            // header
+            int body = Math.min(eol + 1, end);
+
+            if (parallel) {
+                ChunkTask task = new ChunkTask(buf, body, end);
+                ForkJoinPool.commonPool().invoke(task);
+                r.store = task.merge();
+                r.skipped = task.skippedTotal();
+            } else {
+                reader.parseRange(buf, body, end, r.store);
+                r.skipped = reader.skipped;
+            }
+        }
+
+        r.store.trimToSize();
+
+        r.settle();
+
+        if (r.skipped > 0)
+            System.out.println("Skipped " + r.skipped + " malformed rows in " + csv);
+        return r;
+    }
+
+    private void parseRange(MappedByteBuffer buf, int pos, int end, TransactionStore out) {
+
+        while (pos < end) {
+            int eol = lineEnd(buf, pos, end);
+            int len = copyLine(buf, pos, eol);
+            pos = eol + 1;
+
+            if (len == 0)
+                continue;
+
+            if (!parseRow(len, out))
+                skipped++;
+        }
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+
+        private final MappedByteBuffer buf;
+        private final int from, to;
+        private ChunkTask left, right;
+        private TransactionStore rows;
+        private int skipped;
+
+        ChunkTask(MappedByteBuffer buf, int from, int to) {
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from > chunkBytes) {
+                // split just after the newline nearest the middle
+                int mid = Math.min(lineEnd(buf, from + (to - from) / 2, to) + 1, to);
+                if (mid < to) {
+                    left = new ChunkTask(buf, from, mid);
+                    right = new ChunkTask(buf, mid, to);
+                    invokeAll(left, right);
+                    return;
+                }
+            }
+
+            CsvLedgerReader reader = new CsvLedgerReader();
+            rows = new TransactionStore();
+            reader.parseRange(buf, from, to, rows);
+            skipped = reader.skipped;
+        }
+
+        // The chunks' rows in file order, copied once into a store sized for
+        // all of them; merging pairwise up the tree held several growing
+        // copies at once and ran out of heap on large ledgers
+        TransactionStore merge() {
+            List<TransactionStore> parts = new ArrayList<>();
+            collect(parts);
+            return TransactionStore.concat(parts);
+        }
+
+        private void collect(List<TransactionStore> out) {
+            if (left == null) {
+                out.add(rows);
+            } else {
+                left.collect(out);
+                right.collect(out);
+            }
+        }
+
+        int skippedTotal() {
+            return left == null ? skipped : left.skippedTotal() + right.skippedTotal();
+        }
+    }
+
+    private static int lineEnd(MappedByteBuffer buf, int pos, int end) {
+        while (pos < end && buf.get(pos) != '\n')
+            pos++;
+        return pos;
+    }
+
+    // Copies [from, to) into the line buffer, dropping a trailing '\r'
+    private int copyLine(MappedByteBuffer buf, int from, int to) {
+        int len = to - from;
+        if (len > 0 && buf.get(to - 1) == '\r')
+            len--;
+        if (len > line.length)
+            line = new byte[Math.max(len, line.length * 2)];
+        buf.get(from, line, 0, len);
+        return len;
+    }
+
+    /** Date,Category,Type,Method,Amount,Note - returns false for a malformed row. */
+    private boolean parseRow(int len, TransactionStore out) {
+
+        int n = 0;
+        for (int i = 0; i < len && n < 5; i++) {
+            if (line[i] == ',')
+                cut[n++] = i;
+        }
+        if (n < 5)
+            return false;
+
+        int epochDay = parseDate(0, cut[0]);
+        double amount = parseAmount(cut[3] + 1, cut[4]);
+        if (epochDay == Integer.MIN_VALUE || Double.isNaN(amount))
+            return false;
+
+        out.add(epochDay,
+                symbol(Symbols.CATEGORIES, 0, cut[0] + 1, cut[1]),
+                symbol(Symbols.TYPES, 1, cut[1] + 1, cut[2]),
+                symbol(Symbols.METHODS, 2, cut[2] + 1, cut[3]),
+                TransactionStore.toPaise(amount),
+                line, cut[4] + 1, len - cut[4] - 1);
+        return true;
+    }
+
+    // Code of the field [from, to), straight from the line bytes; a run of
+    // rows with the same value only compares it with the last one
+    private int symbol(SymbolTable table, int column, int from, int to) {
+        int code = lastCode[column];
+        if (code < 0 || !table.is(code, line, from, to - from)) {
+            code = table.code(line, from, to - from);
+            lastCode[column] = code;
+        }
+        return code;
+    }
+
+    private String text(int from, int to) {
+        return new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    // yyyy-MM-dd to epoch day, or Integer.MIN_VALUE if invalid
+    private int parseDate(int from, int to) {
+
+        if (to - from != 10 || line[from + 4] != '-' || line[from + 7] != '-')
+            return Integer.MIN_VALUE;
+
+        int y = digits(from, from + 4);
+        int m = digits(from + 5, from + 7);
+        int d = digits(from + 8, from + 10);
+        if (y < 0 || m < 1 || m > 12 || d < 1 || d > 31)
+            return Integer.MIN_VALUE;
+
+        // ledgers are mostly in date order, so remember the last day seen
+        int key = y * 10000 + m * 100 + d;
+        if (key != lastDateKey) {
+            try {
+                lastEpochDay = (int) LocalDate.of(y, m, d).toEpochDay();
+            } catch (RuntimeException e) {
+                return Integer.MIN_VALUE;
+            }
+            lastDateKey = key;
+        }
+        return lastEpochDay;
+    }
+
+    private int digits(int from, int to) {
+        int v = 0;
+        for (int i = from; i < to; i++) {
+            int c = line[i] - '0';
+            if (c < 0 || c > 9)
+                return -1;
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
+    /**
+     * Plain [-]digits[.digits] with at most 15 significant digits is exact as
+     * mantissa / 10^scale (one correctly rounded division), which is what
+     * Double.parseDouble returns. Anything else falls back to it.
+     */
+    private double parseAmount(int from, int to) {
+
+        int i = from;
+        boolean neg = false;
+        if (i < to && line[i] == '-') {
+            neg = true;
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < to; i++) {
+            byte c = line[i];
+            if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0)
+                    scale++;
+            } else {
+                return slowAmount(from, to);
+            }
+        }
+
+        if (digits == 0 || digits > 15)
+            return slowAmount(from, to);
+
+        double v = scale > 0 ? mantissa / POW10[scale] : mantissa;
+        return neg ? -v : v;
+    }
+
+    private double slowAmount(int from, int to) {
+        try {
+            return Double.parseDouble(text(from, to));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
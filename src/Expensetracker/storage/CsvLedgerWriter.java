@@ -0,0 +1,83 @@
+package Expensetracker.storage;
+
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.TransactionStore;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+
+/**
+ * Writes rows of a {@link TransactionStore} in the expenses.csv layout
+ * ({@link CsvLedgerReader} reads it back). Commas in notes become spaces.
+ */
+public class CsvLedgerWriter {
+
+    private static final Timer PERSIST_CSV = Metrics.timer("persist.csv");
+
+    static final String HEADER = "Date,Category,Type,Method,Amount,Note";
+
+    /**
+     * Rewrites the whole ledger: budget line, header, every live row. Goes
+     * through a temp file and a rename, so a crash never leaves a
+     * half-written ledger.
+     */
+    public static void write(Path csv, double budget, TransactionStore st) throws IOException {
+        Files.move(writeTemp(csv, budget, st), csv,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** The whole ledger as {@link #write} has it, in a temp file next to {@code csv}; returns that file. */
+    static Path writeTemp(Path csv, double budget, TransactionStore st) throws IOException {
+
+        long t0 = Metrics.start();
+        Path tmp = csv.resolveSibling(csv.getFileName() + ".tmp");
+
+        int rows;
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmp))) {
+            pw.println("BUDGET," + budget);
+            rows = writeRows(pw, st, row -> true);
+            if (pw.checkError())
+                throw new IOException("Could not write " + tmp);
+        }
+        // on disk before it can be renamed over the ledger
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+
+        PERSIST_CSV.stop(t0, rows, Metrics.ENABLED ? Files.size(tmp) : 0);
+        return tmp;
+    }
+
+    /** Header plus the live rows accepted by {@code rows}; no budget line. */
+    public static int export(Path out, TransactionStore st, IntPredicate rows) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(out))) {
+            return writeRows(pw, st, rows);
+        }
+    }
+
+    private static int writeRows(PrintWriter pw, TransactionStore st, IntPredicate rows) {
+        pw.println(HEADER);
+
+        int n = 0;
+        for (int i = 0; i < st.size(); i++) {
+            if (st.isDeleted(i) || !rows.test(i))
+                continue;
+            pw.println(
+                    st.date(i) + "," +
+                            st.category(i) + "," +
+                            st.type(i) + "," +
+                            st.method(i) + "," +
+                            st.amount(i) + "," +
+                            st.note(i).replace(",", " "));
+            n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,222 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A CSV ledger with its snapshot and journal, and nothing of the UI:
+ * load, change, checkpoint. Used directly by the command line; the desktop
+ * app shares {@link #load} and {@link #checkpoint(Path, Path, TransactionJournal,
+ * double, TransactionStore, BalanceCheckpoints)}.
+ *
+ * For ledger.csv the snapshot and journal are ledger.snapshot and
+ * ledger.journal next to it. Changes made through an instance are journaled
+ * and flushed straight away.
+ */
+public class Ledger implements Closeable {
+
+    private static final Timer LOAD_SNAPSHOT = Metrics.timer("load.snapshot");
+    private static final Timer LOAD_CSV = Metrics.timer("load.csv");
+
+    private final Path csv;
+    private final Path snapshot;
+    private final TransactionStore store;
+    private final BalanceCheckpoints balances;
+    private final TransactionJournal journal;
+    private boolean hasBudget;
+    private double budget;
+
+    private Ledger(Path csv, Path snapshot, CsvLedgerReader.Result r, Path journalPath) throws IOException {
+        this.csv = csv;
+        this.snapshot = snapshot;
+        this.store = r.store;
+        // a missing CSV loads as an empty result without them
+        this.balances = r.balances != null ? r.balances : BalanceCheckpoints.of(store);
+        this.hasBudget = r.hasBudget;
+        this.budget = r.budget;
+        store.addListener(balances);
+
+        journal = TransactionJournal.open(journalPath, csv, new TransactionJournal.Listener() {
+            @Override
+            public void onBudget(double b) {
+                hasBudget = true;
+                budget = b;
+            }
+
+            @Override
+            public void onAdd(Transaction t) {
+                store.add(t);
+            }
+
+            @Override
+            public void onRemove(long[] ids) {
+                store.removeAll(store.slotsOf(ids));
+            }
+
+            @Override
+            public void onDelete(int index) {
+                store.remove(store.liveRow(index));
+            }
+
+            @Override
+            public void onCompact() {
+                store.compact();
+                store.renumberIds();
+            }
+        });
+    }
+
+    public static Ledger open(Path csv) throws IOException {
+        return open(csv, sibling(csv, ".snapshot"), sibling(csv, ".journal"));
+    }
+
+    public static Ledger open(Path csv, Path snapshot, Path journal) throws IOException {
+        return new Ledger(csv, snapshot, load(csv, snapshot), journal);
+    }
+
+    // ledger.csv -> ledger<ext>
+    static Path sibling(Path csv, String ext) {
+        String name = csv.getFileName().toString();
+        if (name.toLowerCase().endsWith(".csv"))
+            name = name.substring(0, name.length() - 4);
+        return csv.resolveSibling(name + ext);
+    }
+
+    // ---------------- shared with the app ----------------
+
+    /**
+     * The snapshot if it still matches {@code csv}, otherwise the CSV
+     * itself, after which a fresh snapshot is taken for next time. The
+     * journal is not applied.
+     */
+    public static CsvLedgerReader.Result load(Path csv, Path snapshot) throws IOException {
+
+        long t0 = Metrics.start();
+        CsvLedgerReader.Result r = LedgerSnapshot.read(snapshot, csv);
+        if (r != null) {
+            LOAD_SNAPSHOT.stop(t0, r.store.size());
+            return r;
+        }
+
+        t0 = Metrics.start();
+        r = CsvLedgerReader.read(csv);
+        LOAD_CSV.stop(t0, r.store.size());
+        if (Files.exists(csv))
+            writeSnapshot(csv, snapshot, r.hasBudget, r.budget, r.store, r.balances);
+        return r;
+    }
+
+    /**
+     * Folds the journal into the CSV: rewrites the CSV from {@code store},
+     * starts an empty journal, then refreshes the snapshot. A snapshot that
+     * fails to write is only reported; the next load sees it is stale.
+     *
+     * The store must be compacted first. The CSV has no ids, so a reload
+     * numbers its rows 1..n; the store's ids are renumbered the same way,
+     * for the records of the new journal.
+     */
+    public static void checkpoint(Path csv, Path snapshot, TransactionJournal journal,
+            double budget, TransactionStore store, BalanceCheckpoints balances) throws IOException {
+
+        if (store.deletedCount() > 0)
+            throw new IllegalStateException("Checkpoint of a store with deleted rows; compact it first");
+
+        CsvLedgerWriter.write(csv, budget, store);
+        store.renumberIds();
+        journal.reset();
+        // the rewritten CSV always carries a BUDGET line
+        writeSnapshot(csv, snapshot, true, budget, store, balances);
+    }
+
+    private static void writeSnapshot(Path csv, Path snapshot, boolean hasBudget, double budget,
+            TransactionStore store, BalanceCheckpoints balances) {
+        try {
+            LedgerSnapshot.write(snapshot, csv, hasBudget, budget, store, balances);
+        } catch (IOException e) {
+            System.out.println("Could not write snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    // ---------------- state ----------------
+
+    public TransactionStore store() {
+        return store;
+    }
+
+    public BalanceCheckpoints balances() {
+        return balances;
+    }
+
+    public boolean hasBudget() {
+        return hasBudget;
+    }
+
+    public double budget() {
+        return budget;
+    }
+
+    public double balance() {
+        return TransactionStore.fromPaise(TransactionStore.toPaise(budget) + balances.netPaise());
+    }
+
+    /** The balance at the end of {@code day}, counting only rows dated then or before. */
+    public double balanceOn(LocalDate day) {
+        return TransactionStore.fromPaise(TransactionStore.toPaise(budget)
+                + balances.netPaiseOn((int) day.toEpochDay()));
+    }
+
+    // ---------------- changes ----------------
+
+    public void setBudget(double b) throws IOException {
+        hasBudget = true;
+        budget = b;
+        journal.appendBudget(b);
+        journal.flush();
+    }
+
+    public void add(Transaction t) throws IOException {
+        store.add(t);
+        journal.appendAdd(t);
+        journal.flush();
+    }
+
+    public void addAll(List<Transaction> batch) throws IOException {
+        for (Transaction t : batch)
+            store.add(t);
+        journal.appendAll(batch);
+        journal.flush();
+    }
+
+    /** Deletes the transactions with these ids as one journal record. */
+    public void remove(long... ids) throws IOException {
+        store.removeAll(store.slotsOf(ids));
+        journal.appendRemove(ids);
+        journal.flush();
+    }
+
+    /**
+     * Drops deleted rows and rewrites the CSV, if anything was journaled
+     * since the last checkpoint.
+     */
+    public void checkpoint() throws IOException {
+        if (journal.size() > 0) {
+            store.compact();
+            checkpoint(csv, snapshot, journal, budget, store, balances);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        journal.close();
+    }
+}
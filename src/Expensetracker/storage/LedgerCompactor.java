@@ -0,0 +1,194 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.TransactionStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Checkpoints a CSV ledger in the background once its journal is more than
+ * {@link #MIN_JOURNAL_BYTES} and a quarter of the CSV, so the journal, and
+ * the replay at the next start, stay bounded while the app keeps running.
+ *
+ * {@link #start} runs on the thread that changes the store, once the store
+ * has been compacted: it renumbers the ids, copies the rows and queues a C
+ * record behind every change so far. Everything else happens on the
+ * "ledger-compactor" thread, while changes keep going to the journal:
+ *
+ * <ol>
+ *   <li>the copy is written out to a temp file next to the CSV</li>
+ *   <li>a K record stamping that file is journaled and synced; if that
+ *       fails or does not happen within a timeout, the file is deleted and
+ *       the CSV left alone</li>
+ *   <li>the temp file is renamed over the CSV, and the snapshot rewritten</li>
+ *   <li>the journal is rebased onto the new CSV, on the writer thread</li>
+ * </ol>
+ *
+ * A crash at any point leaves files that replay to the same rows, see
+ * {@link TransactionJournal}. Each checkpoint records its time, the rows
+ * written and the bytes the ledger files shrank by on the
+ * "compact.checkpoint" timer.
+ */
+public class LedgerCompactor implements Closeable {
+
+    public static final long MIN_JOURNAL_BYTES = 1 << 20;
+
+    // how long the worker waits for the writer to journal the K record
+    private static final long STAMP_TIMEOUT_SECONDS = 30;
+
+    private static final Timer CHECKPOINT = Metrics.timer("compact.checkpoint");
+
+    private final Path csv;
+    private final Path snapshot;
+    private final TransactionJournal journal;
+    private final WriteBehindJournal writer;
+    private final Consumer<IOException> onError;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ledger-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long csvBytes;
+
+    /** {@code writer} must be the one writing to {@code journal}. */
+    public LedgerCompactor(Path csv, Path snapshot, TransactionJournal journal,
+            WriteBehindJournal writer, Consumer<IOException> onError) {
+        this.csv = csv;
+        this.snapshot = snapshot;
+        this.journal = journal;
+        this.writer = writer;
+        this.onError = onError;
+        try {
+            csvBytes = Files.exists(csv) ? Files.size(csv) : 0;
+        } catch (IOException e) {
+            csvBytes = 0;
+        }
+    }
+
+    /** Whether the journal has grown enough for a checkpoint and none is running. */
+    public boolean isDue() {
+        return !running.get() && journal.bytes() > Math.max(MIN_JOURNAL_BYTES, csvBytes / 4);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Checkpoints {@code store} as it is now, renumbering its ids 1..n as
+     * the new CSV will. The store must be compacted. Returns false if a
+     * checkpoint is already running.
+     */
+    public boolean start(TransactionStore store, double budget) {
+        if (store.deletedCount() > 0)
+            throw new IllegalStateException("Checkpoint of a store with deleted rows; compact it first");
+        if (!running.compareAndSet(false, true))
+            return false;
+
+        long t0 = Metrics.start();
+        store.renumberIds();
+        TransactionStore rows = store.copy();
+
+        // the writer's queue keeps C ahead of the K written later
+        writer.submit(j -> journal.appendCompact());
+        worker.execute(() -> write(rows, budget, t0));
+        return true;
+    }
+
+    private void write(TransactionStore rows, double budget, long t0) {
+        try {
+            long before = csvBytes;
+            Path tmp = CsvLedgerWriter.writeTemp(csv, budget, rows);
+            stamp(tmp);
+
+            Files.move(tmp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            csvBytes = Files.size(csv);
+            try {
+                LedgerSnapshot.write(snapshot, csv, true, budget, rows, BalanceCheckpoints.of(rows));
+            } catch (IOException e) {
+                System.out.println("Could not write snapshot " + snapshot + ": " + e.getMessage());
+            }
+
+            writer.submit(j -> {
+                try {
+                    long journalBefore = journal.bytes();
+                    journal.rebase();
+                    long reclaimed = Math.max(0, before + journalBefore - csvBytes - journal.bytes());
+                    CHECKPOINT.stop(t0, rows.size(), reclaimed);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (IOException e) {
+            running.set(false);
+            onError.accept(e);
+        } catch (RuntimeException e) {
+            running.set(false);
+            onError.accept(new IOException("Checkpoint failed", e));
+        } catch (InterruptedException e) {
+            running.set(false);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits for the writer to journal the K record for tmp. Without that
+    // record tmp must not replace the CSV, so if it fails, takes too long or
+    // never runs (the writer was shut down), tmp is deleted and this throws.
+    private void stamp(Path tmp) throws IOException, InterruptedException {
+        CompletableFuture<Void> stamped = new CompletableFuture<>();
+        writer.submit(j -> {
+            try {
+                journal.appendCheckpoint(tmp);
+                stamped.complete(null);
+            } catch (Throwable e) {
+                stamped.completeExceptionally(e);
+            }
+        });
+
+        try {
+            stamped.get(STAMP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Could not stamp the checkpoint in the journal", e.getCause());
+        } catch (TimeoutException e) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Checkpoint not stamped in the journal after "
+                    + STAMP_TIMEOUT_SECONDS + " s; the CSV is left as it was");
+        } catch (InterruptedException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a running checkpoint to finish its files. The rebase may
+     * still be queued on the writer, which the caller closes next.
+     */
+    @Override
+    public void close() throws IOException {
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(60, TimeUnit.SECONDS))
+                throw new IOException("Background checkpoint did not finish");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the background checkpoint", e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package Expensetracker.storage;
+
+import Expensetracker.model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where ledger changes are persisted: the CSV journal or the SQLite database.
+ * Deletes name transactions by id ({@link Transaction#getId()}), so a batch
+ * of them is one record. Writes may be buffered until {@link #flush()}.
+ */
+public interface LedgerSink extends Closeable {
+
+    void appendBudget(double budget) throws IOException;
+
+    void appendAdd(Transaction t) throws IOException;
+
+    void appendAll(List<Transaction> batch) throws IOException;
+
+    void appendRemove(long[] ids) throws IOException;
+
+    void flush() throws IOException;
+}
@@ -0,0 +1,294 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.SymbolTable;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary copy of expenses.csv that loads without parsing anything.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   int    magic "ETSN"
+ *   int    format version
+ *   long   length of the CSV it was taken from
+ *   long   last-modified time of that CSV (ms)
+ *   byte   has budget
+ *   double budget
+ *   int    row count
+ *   3 x string table (categories, types, methods): int count, then per
+ *          entry int length + UTF-8 bytes; a row's code indexes its table
+ *   int    note bytes, then the notes of every row back to back
+ *   rows   fixed 32-byte records: int epoch day, long paise,
+ *          int category, int type, int method, int note offset, int note length
+ *   int    balance checkpoint interval, int count, then the checkpoints
+ *          (long paise, see {@link BalanceCheckpoints})
+ *   long   CRC32C of everything above
+ * </pre>
+ *
+ * The snapshot is only used while the CSV still has the recorded length and
+ * modification time; any other CSV (edited by hand, restored from a backup)
+ * makes it stale and the caller parses the CSV instead.
+ */
+public class LedgerSnapshot {
+
+    private static final int MAGIC = 0x4554534E; // "ETSN"
+    private static final int VERSION = 2;
+    private static final int RECORD_BYTES = 32;
+
+    private static final Timer PERSIST_SNAPSHOT = Metrics.timer("persist.snapshot");
+
+    /**
+     * Writes {@code store} and the budget as the snapshot of {@code csv},
+     * which must already hold the same rows. Replaces the old snapshot
+     * atomically. The store must be compacted first.
+     */
+    public static void write(Path snapshot, Path csv,
+            boolean hasBudget, double budget, TransactionStore store,
+            BalanceCheckpoints balances) throws IOException {
+
+        if (store.deletedCount() > 0)
+            throw new IllegalStateException("Snapshot of a store with deleted rows; compact it first");
+
+        long t0 = Metrics.start();
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+
+        try (Out out = new Out(FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+
+            int n = store.size();
+            out.room(37);
+            out.buf.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(Files.size(csv))
+                    .putLong(Files.getLastModifiedTime(csv).toMillis())
+                    .put((byte) (hasBudget ? 1 : 0))
+                    .putDouble(budget)
+                    .putInt(n);
+
+            writeTable(out, Symbols.CATEGORIES);
+            writeTable(out, Symbols.TYPES);
+            writeTable(out, Symbols.METHODS);
+
+            long noteBytes = 0;
+            for (int i = 0; i < n; i++)
+                noteBytes += store.noteLength(i);
+            if (noteBytes > Integer.MAX_VALUE)
+                throw new IOException("Notes too large for a snapshot: " + noteBytes + " bytes");
+
+            out.room(4);
+            out.buf.putInt((int) noteBytes);
+            byte[] note = new byte[256];
+            for (int i = 0; i < n; i++) {
+                int len = store.noteLength(i);
+                if (len > note.length)
+                    note = new byte[Math.max(len, note.length * 2)];
+                store.copyNote(i, note, 0);
+                out.put(note, len);
+            }
+
+            int noteAt = 0;
+            for (int i = 0; i < n; i++) {
+                out.room(RECORD_BYTES);
+                out.buf.putInt(store.epochDay(i))
+                        .putLong(store.amountPaise(i))
+                        .putInt(store.categoryCode(i))
+                        .putInt(store.typeCode(i))
+                        .putInt(store.methodCode(i))
+                        .putInt(noteAt)
+                        .putInt(store.noteLength(i));
+                noteAt += store.noteLength(i);
+            }
+
+            long[] checkpoints = balances.checkpoints();
+            out.room(8);
+            out.buf.putInt(BalanceCheckpoints.INTERVAL).putInt(checkpoints.length);
+            for (long c : checkpoints) {
+                out.room(8);
+                out.buf.putLong(c);
+            }
+
+            out.finish();
+        }
+
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        PERSIST_SNAPSHOT.stop(t0, store.size(), Metrics.ENABLED ? Files.size(snapshot) : 0);
+    }
+
+    private static void writeTable(Out out, SymbolTable table) throws IOException {
+        List<String> values = table.values();
+        out.room(4);
+        out.buf.putInt(values.size());
+        for (String v : values) {
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            out.room(4);
+            out.buf.putInt(b.length);
+            out.put(b, b.length);
+        }
+    }
+
+    /**
+     * Loads the snapshot if it belongs to the current {@code csv}; null if
+     * there is none, it is stale, or it fails its checksum.
+     */
+    public static CsvLedgerReader.Result read(Path snapshot, Path csv) throws IOException {
+
+        if (!Files.exists(snapshot) || !Files.exists(csv))
+            return null;
+
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+
+            long size = ch.size();
+            if (size < 45)
+                return stale(snapshot, "too short");
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Snapshot too large to map: " + size + " bytes");
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+                return stale(snapshot, "unknown format");
+            if (buf.getLong(8) != Files.size(csv)
+                    || buf.getLong(16) != Files.getLastModifiedTime(csv).toMillis())
+                return stale(snapshot, "CSV has changed since");
+
+            CRC32C crc = new CRC32C();
+            crc.update(buf.slice(0, (int) size - 8));
+            if (crc.getValue() != buf.getLong((int) size - 8))
+                return stale(snapshot, "checksum mismatch");
+
+            return parse(buf.position(24));
+
+        } catch (RuntimeException e) {
+            // checksum passed but the contents don't add up
+            return stale(snapshot, e.toString());
+        }
+    }
+
+    private static CsvLedgerReader.Result parse(ByteBuffer buf) {
+
+        CsvLedgerReader.Result r = new CsvLedgerReader.Result();
+        r.hasBudget = buf.get() != 0;
+        r.budget = buf.getDouble();
+        int n = buf.getInt();
+
+        int[] categories = readTable(buf, Symbols.CATEGORIES);
+        int[] types = readTable(buf, Symbols.TYPES);
+        int[] methods = readTable(buf, Symbols.METHODS);
+
+        byte[] notes = new byte[buf.getInt()];
+        buf.get(notes);
+
+        int[] day = new int[n];
+        long[] amount = new long[n];
+        int[] category = new int[n];
+        int[] type = new int[n];
+        int[] method = new int[n];
+        int[] noteStart = new int[n];
+        int[] noteLength = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            day[i] = buf.getInt();
+            amount[i] = buf.getLong();
+            category[i] = categories[buf.getInt()];
+            type[i] = types[buf.getInt()];
+            method[i] = methods[buf.getInt()];
+            noteStart[i] = buf.getInt();
+            noteLength[i] = buf.getInt();
+            if (noteStart[i] < 0 || noteLength[i] < 0 || noteStart[i] + noteLength[i] > notes.length)
+                throw new IllegalStateException("Row " + i + " note out of range");
+        }
+
+        r.store = TransactionStore.ofColumns(day, amount, category, type, method,
+                noteStart, noteLength, notes);
+
+        int interval = buf.getInt();
+        long[] checkpoints = new long[buf.getInt()];
+        for (int j = 0; j < checkpoints.length; j++)
+            checkpoints[j] = buf.getLong();
+        if (interval == BalanceCheckpoints.INTERVAL)
+            r.balances = BalanceCheckpoints.restore(r.store, checkpoints);
+
+        r.settle();
+        return r;
+    }
+
+    // Snapshot code -> code in the live table
+    private static int[] readTable(ByteBuffer buf, SymbolTable table) {
+        int[] codes = new int[buf.getInt()];
+        for (int c = 0; c < codes.length; c++) {
+            byte[] b = new byte[buf.getInt()];
+            buf.get(b);
+            codes[c] = table.code(new String(b, StandardCharsets.UTF_8));
+        }
+        return codes;
+    }
+
+    private static CsvLedgerReader.Result stale(Path snapshot, String why) {
+        System.out.println("Ignoring snapshot " + snapshot + ": " + why);
+        return null;
+    }
+
+    // Buffered channel writer that keeps a running CRC32C of what it writes
+    private static class Out implements AutoCloseable {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        final CRC32C crc = new CRC32C();
+
+        Out(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void room(int bytes) throws IOException {
+            if (buf.remaining() < bytes)
+                drain();
+        }
+
+        void put(byte[] b, int len) throws IOException {
+            for (int at = 0; at < len; ) {
+                if (!buf.hasRemaining())
+                    drain();
+                int k = Math.min(len - at, buf.remaining());
+                buf.put(b, at, k);
+                at += k;
+            }
+        }
+
+        void drain() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            while (buf.hasRemaining())
+                ch.write(buf);
+            buf.clear();
+        }
+
+        void finish() throws IOException {
+            drain();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining())
+                ch.write(buf);
+            ch.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            ch.close();
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.Aggregation;
+import Expensetracker.index.FilterEngine;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.util.DBConnection;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ledger kept in the SQLite {@code transactions} table (see
+ * {@link DBConnection} for the schema).
+ *
+ * As a {@link LedgerSink}, adds and deletes are queued in memory and
+ * {@link #flush()} sends them as JDBC batches on the pool's writer, in one
+ * transaction. The store's transaction ids are the table's ids: rows are
+ * loaded with theirs and inserted with the one the store gave them, so a
+ * delete is by primary key. The sink side is meant for a single thread
+ * (the write-behind writer).
+ *
+ * The read side lets SQLite do the filtering and summing over its indexes
+ * on a reader connection, so the paged table does not need every row in
+ * the heap, and is safe from any thread: a {@link View} is the rows
+ * matching a {@link FilterEngine.Query} in a chosen order, read a page at
+ * a time, and {@link #dailyTotals()} feeds the dashboard's totals.
+ */
+public class SqliteLedger implements LedgerSink {
+
+    private static final Timer LOAD = Metrics.timer("load.sqlite");
+
+    private static final String COLUMNS = "date, category, type, method, amount, note";
+
+    private static final String INSERT =
+            "INSERT INTO transactions (id, " + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE =
+            "DELETE FROM transactions WHERE id = ?";
+    private static final String PUT_SETTING =
+            "INSERT OR REPLACE INTO settings (key, value) VALUES (?, ?)";
+    private static final String GET_SETTING =
+            "SELECT value FROM settings WHERE key = ?";
+
+    // one queued change: an add, a batch of deletes or a budget
+    private static class Op {
+        final Transaction add;
+        final long[] remove;
+        final double budget;
+
+        Op(Transaction add, long[] remove, double budget) {
+            this.add = add;
+            this.remove = remove;
+            this.budget = budget;
+        }
+    }
+
+    private final DBConnection db;
+    private List<Op> pending = new ArrayList<>();
+
+    public SqliteLedger(DBConnection db) {
+        this.db = db;
+    }
+
+    // ---------------- migration ----------------
+
+    public boolean isMigrated() throws SQLException {
+        return db.read(h -> setting(h, "migrated")) != null;
+    }
+
+    /**
+     * One-time copy of the CSV ledger, plus whatever its journal still holds,
+     * into the database. Does nothing if that already happened. The CSV
+     * files are left in place. Returns the number of rows copied.
+     *
+     * Rows keep the ids a load of the CSV and journal gives them, so the
+     * table's ids follow the CSV order.
+     */
+    public int migrate(Path csv, Path journal) throws IOException, SQLException {
+
+        if (isMigrated())
+            return 0;
+
+        CsvLedgerReader.Result r = CsvLedgerReader.read(csv);
+        TransactionStore st = r.store;
+        double[] budget = {r.hasBudget ? r.budget : Double.NaN};
+
+        if (Files.exists(journal)) {
+            TransactionJournal.open(journal, csv, new TransactionJournal.Listener() {
+                @Override
+                public void onBudget(double b) {
+                    budget[0] = b;
+                }
+
+                @Override
+                public void onAdd(Transaction t) {
+                    st.add(t);
+                }
+
+                @Override
+                public void onRemove(long[] ids) {
+                    st.removeAll(st.slotsOf(ids));
+                }
+
+                @Override
+                public void onDelete(int index) {
+                    st.remove(st.liveRow(index));
+                }
+
+                @Override
+                public void onCompact() {
+                    st.compact();
+                    st.renumberIds();
+                }
+            }).close();
+        }
+
+        return db.write(h -> {
+            if (setting(h, "migrated") != null)
+                return 0;
+
+            PreparedStatement insert = h.prepare(INSERT);
+            for (int i = 0; i < st.size(); i++) {
+                if (st.isDeleted(i))
+                    continue;
+                bindInsert(insert, st.id(i), st.date(i).toString(), st.category(i), st.type(i), st.method(i),
+                        st.amount(i), st.note(i));
+            }
+            insert.executeBatch();
+
+            if (!Double.isNaN(budget[0]))
+                putSetting(h, "budget", String.valueOf(budget[0]));
+            putSetting(h, "migrated", String.valueOf(System.currentTimeMillis()));
+            return st.liveSize();
+        });
+    }
+
+    // ---------------- loading ----------------
+
+    /**
+     * Budget, every row in id order under its id, and the running balance.
+     * New rows get ids above any the table has handed out, deleted ones
+     * included.
+     */
+    public CsvLedgerReader.Result load() throws SQLException {
+        return load(true);
+    }
+
+    /**
+     * The budget and an empty store that hands out ids above the table's,
+     * for when the rows are read through {@link View}s instead.
+     */
+    public CsvLedgerReader.Result loadWithoutRows() throws SQLException {
+        return load(false);
+    }
+
+    private CsvLedgerReader.Result load(boolean rows) throws SQLException {
+
+        long t0 = Metrics.start();
+        CsvLedgerReader.Result r = new CsvLedgerReader.Result();
+
+        db.read(h -> {
+            String budget = setting(h, "budget");
+            if (budget != null) {
+                r.hasBudget = true;
+                r.budget = Double.parseDouble(budget);
+            }
+
+            if (rows) {
+                try (ResultSet rs = h.prepare("SELECT id, " + COLUMNS + " FROM transactions ORDER BY id")
+                        .executeQuery()) {
+                    while (rs.next())
+                        addRow(r.store, rs);
+                }
+            }
+            try (ResultSet rs = h.prepare("SELECT seq FROM sqlite_sequence WHERE name = 'transactions'")
+                    .executeQuery()) {
+                if (rs.next())
+                    r.store.reserveIds(rs.getLong(1) + 1);
+            }
+            return null;
+        });
+        r.store.trimToSize();
+        r.settle();
+        LOAD.stop(t0, r.store.size());
+        return r;
+    }
+
+    private static int addRow(TransactionStore st, ResultSet rs) throws SQLException {
+        return addRow(st, rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                rs.getString(5), rs.getDouble(6), rs.getString(7));
+    }
+
+    private static int addRow(TransactionStore st, long id, String date, String category, String type,
+            String method, double amount, String note) {
+        byte[] n = note == null ? new byte[0] : note.getBytes(StandardCharsets.UTF_8);
+        return st.add(id,
+                (int) LocalDate.parse(date).toEpochDay(),
+                category,
+                type,
+                method,
+                TransactionStore.toPaise(amount),
+                n, 0, n.length);
+    }
+
+    // ---------------- pushed-down queries ----------------
+
+    /** Number of rows matching {@code q}. */
+    public int count(FilterEngine.Query q) throws SQLException {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM transactions" + where(q, args);
+
+        return db.read(h -> {
+            try (ResultSet rs = bind(h.prepare(sql), args).executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    // ---------------- paged reads ----------------
+
+    /** What a {@link View} is sorted by; rows that tie go by id. */
+    public enum Order {
+        ID("id"),
+        DATE("date"),
+        CATEGORY("category"),
+        TYPE("type"),
+        METHOD("method"),
+        AMOUNT("amount"),
+        NOTE("IFNULL(note, '')");
+
+        // the ledger never writes NULL anywhere else
+        final String expr;
+
+        Order(String expr) {
+            this.expr = expr;
+        }
+    }
+
+    /**
+     * Rows read by a {@link View}. The store keeps ids ascending, so
+     * {@link #rows} has them in id order, and {@link #row} says which of
+     * them is at each position of the page.
+     */
+    public static final class Page {
+        public final TransactionStore rows;
+        private final int[] at;
+
+        private Page(TransactionStore rows, int[] at) {
+            this.rows = rows;
+            this.at = at;
+        }
+
+        public int size() {
+            return at.length;
+        }
+
+        /** The row of {@link #rows} at position {@code i} of the page. */
+        public int row(int i) {
+            return at[i];
+        }
+
+        public Transaction get(int i) {
+            return rows.get(at[i]);
+        }
+    }
+
+    // one row of a result, held until the page is in id order
+    private static class Fetched {
+        final long id;
+        final String date, category, type, method, note;
+        final double amount;
+
+        Fetched(ResultSet rs) throws SQLException {
+            id = rs.getLong(1);
+            date = rs.getString(2);
+            category = rs.getString(3);
+            type = rs.getString(4);
+            method = rs.getString(5);
+            amount = rs.getDouble(6);
+            note = rs.getString(7);
+        }
+
+        int addTo(TransactionStore st) {
+            return addRow(st, id, date, category, type, method, amount, note);
+        }
+    }
+
+    /**
+     * The rows matching {@code q} sorted by {@code order}, counted now and
+     * read a page at a time with {@link View#read}. A view does not see
+     * writes made after it was opened; open another for that.
+     */
+    public View view(FilterEngine.Query q, Order order, boolean descending) throws SQLException {
+        return new View(q, order, descending);
+    }
+
+    /**
+     * A fixed sort and filter over the table. Each read remembers the sort
+     * key and id of its last row, and later reads start from the nearest
+     * such row before them (a seek on the index) instead of skipping every
+     * row from the top with OFFSET, so paging on through a big table stays
+     * cheap.
+     */
+    public final class View {
+
+        private final String select;
+        private final String where;
+        private final String seek;
+        private final String orderBy;
+        private final List<Object> args = new ArrayList<>();
+        private final boolean byId;
+        private final int size;
+
+        // position -> {sort key, id} of the row there, from earlier reads
+        private final TreeMap<Integer, Object[]> anchors = new TreeMap<>();
+
+        private View(FilterEngine.Query q, Order order, boolean descending) throws SQLException {
+            byId = order == Order.ID;
+            String dir = descending ? " DESC" : "";
+            String cmp = descending ? " < " : " > ";
+
+            select = "SELECT id, " + COLUMNS + (byId ? "" : ", " + order.expr) + " FROM transactions";
+            where = where(q, args);
+            seek = byId ? "id" + cmp + "?" : "(" + order.expr + ", id)" + cmp + "(?, ?)";
+            orderBy = " ORDER BY " + (byId ? "" : order.expr + dir + ", ") + "id" + dir;
+
+            size = count(q);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /** Up to {@code limit} rows from position {@code offset} on. */
+        public synchronized Page read(int offset, int limit) throws SQLException {
+
+            List<Object> a = new ArrayList<>(args);
+            String sql = select + where;
+            int skip = offset;
+
+            Map.Entry<Integer, Object[]> from = anchors.floorEntry(offset - 1);
+            if (from != null) {
+                sql += (where.isEmpty() ? " WHERE " : " AND ") + seek;
+                if (!byId)
+                    a.add(from.getValue()[0]);
+                a.add(from.getValue()[1]);
+                skip = offset - from.getKey() - 1;
+            }
+            sql += orderBy + " LIMIT ? OFFSET ?";
+            a.add(limit);
+            a.add(skip);
+
+            String query = sql;
+            List<Fetched> fetched = new ArrayList<>();
+            Object[] last = new Object[2];
+            db.read(h -> {
+                try (ResultSet rs = bind(h.prepare(query), a).executeQuery()) {
+                    while (rs.next()) {
+                        fetched.add(new Fetched(rs));
+                        last[0] = byId ? null : rs.getObject(8);
+                        last[1] = rs.getLong(1);
+                    }
+                }
+                return null;
+            });
+
+            int n = fetched.size();
+            Integer[] byIds = new Integer[n];
+            for (int i = 0; i < n; i++)
+                byIds[i] = i;
+            Arrays.sort(byIds, (x, y) -> Long.compare(fetched.get(x).id, fetched.get(y).id));
+
+            TransactionStore rows = new TransactionStore();
+            int[] at = new int[n];
+            for (int i : byIds)
+                at[i] = fetched.get(i).addTo(rows);
+
+            if (n > 0)
+                anchors.put(offset + n - 1, last);
+            return new Page(rows, at);
+        }
+    }
+
+    /**
+     * Paise and rows per day, category and type over the whole table, as
+     * {@link Aggregation#run} would give them by {@code DAY} for the loaded
+     * rows, but summed by SQLite without loading any.
+     */
+    public Aggregation.Groups dailyTotals() throws SQLException {
+        String sql = "SELECT date, category, type, SUM(CAST(ROUND(amount * 100) AS INTEGER)), COUNT(*)"
+                + " FROM transactions GROUP BY 1, 2, 3";
+
+        Aggregation.Builder groups = new Aggregation.Builder();
+        db.read(h -> {
+            try (ResultSet rs = h.prepare(sql).executeQuery()) {
+                while (rs.next()) {
+                    groups.add((int) LocalDate.parse(rs.getString(1)).toEpochDay(),
+                            Symbols.CATEGORIES.code(rs.getString(2)),
+                            Symbols.TYPES.code(rs.getString(3)),
+                            rs.getLong(4),
+                            rs.getLong(5));
+                }
+            }
+            return null;
+        });
+        return groups.build();
+    }
+
+    // WHERE clause for q; bound values are appended to args
+    private static String where(FilterEngine.Query q, List<Object> args) {
+
+        List<String> terms = new ArrayList<>();
+
+        if (q.category() != FilterEngine.Query.ANY_CATEGORY) {
+            if (q.category() < Symbols.CATEGORIES.size()) {
+                terms.add("category = ?");
+                args.add(Symbols.CATEGORIES.value(q.category()));
+            } else {
+                terms.add("0"); // unknown category matches nothing
+            }
+        }
+        if (q.fromDay() != Integer.MIN_VALUE) {
+            terms.add("date >= ?");
+            args.add(LocalDate.ofEpochDay(q.fromDay()).toString());
+        }
+        if (q.toDay() != Integer.MAX_VALUE) {
+            terms.add("date <= ?");
+            args.add(LocalDate.ofEpochDay(q.toDay()).toString());
+        }
+        if (q.minPaise() != Long.MIN_VALUE) {
+            terms.add("amount >= ?");
+            args.add(TransactionStore.fromPaise(q.minPaise()));
+        }
+        if (q.maxPaise() != Long.MAX_VALUE) {
+            terms.add("amount <= ?");
+            args.add(TransactionStore.fromPaise(q.maxPaise()));
+        }
+        if (q.note() != null) {
+            // SQLite's lower() only folds ASCII
+            terms.add("instr(lower(note), ?) > 0");
+            args.add(q.note());
+        }
+
+        return terms.isEmpty() ? "" : " WHERE " + String.join(" AND ", terms);
+    }
+
+    private static PreparedStatement bind(PreparedStatement ps, List<Object> args) throws SQLException {
+        for (int i = 0; i < args.size(); i++)
+            ps.setObject(i + 1, args.get(i));
+        return ps;
+    }
+
+    // ---------------- LedgerSink ----------------
+
+    @Override
+    public void appendBudget(double budget) {
+        pending.add(new Op(null, null, budget));
+    }
+
+    @Override
+    public void appendAdd(Transaction t) {
+        pending.add(new Op(t, null, Double.NaN));
+    }
+
+    @Override
+    public void appendAll(List<Transaction> batch) {
+        for (Transaction t : batch)
+            appendAdd(t);
+    }
+
+    @Override
+    public void appendRemove(long[] ids) {
+        pending.add(new Op(null, ids, Double.NaN));
+    }
+
+    /**
+     * Sends everything queued as one transaction: runs of adds and runs of
+     * deletes each go out as a JDBC batch, in order. If it fails the whole
+     * transaction is rolled back and the changes go back to the front of the
+     * queue, ahead of any queued since, so the next flush tries them again.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (pending.isEmpty())
+            return;
+
+        List<Op> ops = pending;
+        pending = new ArrayList<>();
+        try {
+            db.write(h -> {
+                PreparedStatement insert = h.prepare(INSERT);
+                PreparedStatement delete = h.prepare(DELETE);
+                try {
+                    int inserts = 0, deletes = 0;
+
+                    for (Op op : ops) {
+                        if (op.add != null) {
+                            // keep the order: a delete may be of a row added just before it
+                            if (deletes > 0) {
+                                delete.executeBatch();
+                                deletes = 0;
+                            }
+                            Transaction t = op.add;
+                            bindInsert(insert, t.getId(), t.getDateStr(), t.getCategory(), t.getType(), t.getMethod(),
+                                    t.getAmount(), t.getNote());
+                            inserts++;
+                        } else {
+                            if (inserts > 0) {
+                                insert.executeBatch();
+                                inserts = 0;
+                            }
+                            if (op.remove != null) {
+                                for (long id : op.remove) {
+                                    delete.setLong(1, id);
+                                    delete.addBatch();
+                                }
+                                deletes += op.remove.length;
+                            } else {
+                                if (deletes > 0) {
+                                    delete.executeBatch();
+                                    deletes = 0;
+                                }
+                                putSetting(h, "budget", String.valueOf(op.budget));
+                            }
+                        }
+                    }
+                    if (inserts > 0)
+                        insert.executeBatch();
+                    if (deletes > 0)
+                        delete.executeBatch();
+                } catch (SQLException e) {
+                    // the statements are cached; don't leave half a batch on them
+                    insert.clearBatch();
+                    delete.clearBatch();
+                    throw e;
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            ops.addAll(pending);
+            pending = ops;
+            throw new IOException("Database write failed, " + ops.size() + " changes kept for the next try: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private static void bindInsert(PreparedStatement insert, long id, String date, String category,
+            String type, String method, double amount, String note) throws SQLException {
+        insert.setLong(1, id);
+        insert.setString(2, date);
+        insert.setString(3, category);
+        insert.setString(4, type);
+        insert.setString(5, method);
+        insert.setDouble(6, amount);
+        insert.setString(7, note);
+        insert.addBatch();
+    }
+
+    private static String setting(DBConnection.Handle h, String key) throws SQLException {
+        PreparedStatement ps = h.prepare(GET_SETTING);
+        ps.setString(1, key);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static void putSetting(DBConnection.Handle h, String key, String value) throws SQLException {
+        PreparedStatement ps = h.prepare(PUT_SETTING);
+        ps.setString(1, key);
+        ps.setString(2, value);
+        ps.executeUpdate();
+    }
+
+    /** Commits whatever is still queued. The pool stays open for its owner to close. */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,77 @@
+package Expensetracker.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses and validates a bank statement export (Date,Name,Amount,Type) in
+ * one pass, without touching the ledger. Nothing is applied if any row is bad.
+ */
+public class StatementImport {
+
+    public static class Row {
+        public final LocalDate date;
+        public final String name;
+        public final double amount;
+        public final String type;
+
+        Row(LocalDate date, String name, double amount, String type) {
+            this.date = date;
+            this.name = name;
+            this.amount = amount;
+            this.type = type;
+        }
+    }
+
+    public static List<Row> parse(Path file) throws IOException {
+
+        List<Row> rows = new ArrayList<>();
+
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+
+            br.readLine(); // skip header
+
+            String line;
+            int lineNo = 1;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank())
+                    continue;
+                rows.add(parseRow(line, lineNo));
+            }
+        }
+        return rows;
+    }
+
+    private static Row parseRow(String line, int lineNo) {
+
+        String[] p = line.split(",");
+        if (p.length < 4)
+            throw new IllegalArgumentException("Line " + lineNo + ": expected Date,Name,Amount,Type");
+
+        try {
+            LocalDate date = LocalDate.parse(p[0].trim());
+            double amt = Double.parseDouble(p[2].trim());
+            String type = p[3].trim();
+
+            if (!type.equals("Credit") && !type.equals("Debit"))
+                throw new IllegalArgumentException("Line " + lineNo + ": type must be Credit or Debit");
+            if (amt < 0)
+                throw new IllegalArgumentException("Line " + lineNo + ": amount cannot be negative");
+
+            return new Row(date, p[1].trim(), amt, type);
+
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Line " + lineNo + ": invalid date " + p[0]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNo + ": invalid amount " + p[2]);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package Expensetracker.storage;
+
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Transaction;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of ledger changes made since the last CSV checkpoint.
+ *
+ * Record layout (one per line):
+ * <pre>
+ *   #base,&lt;csv length&gt;,&lt;csv last modified&gt;
+ *   B,&lt;budget&gt;
+ *   A,&lt;date&gt;,&lt;category&gt;,&lt;type&gt;,&lt;method&gt;,&lt;amount&gt;,&lt;note&gt;
+ *   R,&lt;id&gt;,&lt;id&gt;,...
+ *   D,&lt;row index&gt;
+ *   C
+ *   K,&lt;csv length&gt;,&lt;csv last modified&gt;
+ * </pre>
+ *
+ * R deletes transactions by id. Ids are those of a replay: rows of the CSV
+ * are 1..n in file order and each A takes the next one. D is the older
+ * delete by position among the rows not yet deleted, still read but no
+ * longer written.
+ *
+ * The header stamps the CSV the journal was started against. If the CSV no
+ * longer matches (a checkpoint finished but the journal was not reset yet),
+ * the records are already folded into the CSV and are discarded on open.
+ *
+ * C and K are left by a {@link LedgerCompactor}, which checkpoints while
+ * records keep coming. C is where it copied the ledger: the replay drops
+ * deleted rows and renumbers ids there, as a reload of the new CSV would.
+ * K stamps the new CSV, and is on disk before that CSV replaces the old one.
+ * So if the header no longer matches the CSV but a K does, the records up
+ * to the C before it are in the CSV and only the ones after are replayed.
+ * {@link #rebase()} then drops the folded records from the file.
+ *
+ * Appends are buffered and only certain to be on disk after {@link #flush()}.
+ * The app drives it through {@link WriteBehindJournal}, which batches
+ * records into one flush. Not thread-safe.
+ */
+public class TransactionJournal implements LedgerSink {
+
+    public interface Listener {
+        void onBudget(double budget);
+
+        void onAdd(Transaction t);
+
+        /** A C record: drop the deleted rows and renumber the ids 1..n. */
+        void onCompact();
+
+        void onRemove(long[] ids);
+
+        /** An old D record: the {@code index}-th row still there. */
+        void onDelete(int index);
+    }
+
+    private static final Timer REPLAY = Metrics.timer("load.journal");
+
+    private final Path journalPath;
+    private final Path basePath;
+    private FileOutputStream file;
+    private Writer out;
+    private int records;
+    // file length, buffered records included; read by other threads
+    private volatile long bytes;
+
+    private TransactionJournal(Path journalPath, Path basePath) {
+        this.journalPath = journalPath;
+        this.basePath = basePath;
+    }
+
+    /**
+     * Opens the journal for {@code basePath}, replaying every valid record
+     * into {@code listener}. A torn last record (crash mid-append) is cut off.
+     */
+    public static TransactionJournal open(Path journalPath, Path basePath, Listener listener)
+            throws IOException {
+
+        TransactionJournal j = new TransactionJournal(journalPath, basePath);
+
+        long t0 = Metrics.start();
+        int folded = Files.exists(journalPath) ? j.replay(listener) : -1;
+        if (folded >= 0) {
+            REPLAY.stop(t0, j.records, Metrics.ENABLED ? Files.size(journalPath) : 0);
+            j.openForAppend();
+            if (folded > 0)
+                j.rebase();
+        } else {
+            j.reset();
+        }
+        return j;
+    }
+
+    private void openForAppend() throws IOException {
+        file = new FileOutputStream(journalPath.toFile(), true);
+        out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+        bytes = Files.size(journalPath);
+    }
+
+    // Replays what the CSV does not have yet. Returns how many records it
+    // already has (they precede a K matching it), or -1 to discard the file.
+    private int replay(Listener listener) throws IOException {
+
+        long size = Files.size(journalPath);
+        long valid = 0;
+        int folded = 0;
+
+        try (BufferedReader br = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+
+            String header = br.readLine();
+            if (header == null)
+                return -1;
+            if (!header.equals(stamp())) {
+                folded = foldedThrough(Files.readAllLines(journalPath, StandardCharsets.UTF_8), stampOf(basePath));
+                if (folded < 0) {
+                    System.out.println("Journal does not match " + basePath + ", discarding");
+                    return -1;
+                }
+            }
+            valid = header.getBytes(StandardCharsets.UTF_8).length + 1;
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                long len = line.getBytes(StandardCharsets.UTF_8).length + 1;
+
+                // no trailing newline: the write was cut off part way
+                if (valid + len > size) {
+                    System.out.println("Journal truncated at record " + (records + 1));
+                    break;
+                }
+                try {
+                    if (records >= folded)
+                        apply(line, listener);
+                } catch (RuntimeException e) {
+                    System.out.println("Journal truncated at record " + (records + 1));
+                    break;
+                }
+                records++;
+                valid += len;
+            }
+        }
+
+        try (FileChannel ch = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+            if (ch.size() > valid)
+                ch.truncate(valid);
+        }
+        return folded;
+    }
+
+    // Number of records (after the header) folded into the CSV stamped
+    // `csv`: through the last C before the last K naming it. -1 if no K does.
+    private static int foldedThrough(List<String> lines, String csv) {
+        int k = lines.lastIndexOf("K," + csv);
+        if (k < 1)
+            return -1;
+        for (int c = k - 1; c >= 1; c--) {
+            if (lines.get(c).equals("C"))
+                return c;
+        }
+        return -1;
+    }
+
+    private static void apply(String line, Listener listener) {
+
+        String[] p = line.split(",", -1);
+
+        switch (p[0]) {
+            case "B":
+                listener.onBudget(Double.parseDouble(p[1]));
+                break;
+            case "A":
+                listener.onAdd(new Transaction(
+                        LocalDate.parse(p[1]),
+                        p[2],
+                        p[3],
+                        p[4],
+                        Double.parseDouble(p[5]),
+                        p[6]));
+                break;
+            case "R":
+                long[] ids = new long[p.length - 1];
+                for (int i = 0; i < ids.length; i++)
+                    ids[i] = Long.parseLong(p[i + 1]);
+                listener.onRemove(ids);
+                break;
+            case "D":
+                listener.onDelete(Integer.parseInt(p[1]));
+                break;
+            case "C":
+                listener.onCompact();
+                break;
+            case "K":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record: " + line);
+        }
+    }
+
+    @Override
+    public void appendBudget(double budget) throws IOException {
+        append("B," + budget);
+    }
+
+    @Override
+    public void appendAdd(Transaction t) throws IOException {
+        append(addRecord(t));
+    }
+
+    @Override
+    public void appendAll(List<Transaction> batch) throws IOException {
+        for (Transaction t : batch)
+            append(addRecord(t));
+    }
+
+    private static String addRecord(Transaction t) {
+        return "A," +
+                t.getDate() + "," +
+                t.getCategory() + "," +
+                t.getType() + "," +
+                t.getMethod() + "," +
+                t.getAmount() + "," +
+                t.getNote().replace(",", " ").replace("\n", " ");
+    }
+
+    @Override
+    public void appendRemove(long[] ids) throws IOException {
+        StringBuilder sb = new StringBuilder(ids.length * 8).append('R');
+        for (long id : ids)
+            sb.append(',').append(id);
+        append(sb.toString());
+    }
+
+    /** Marks where a background checkpoint copied the ledger, see {@link LedgerCompactor}. */
+    public void appendCompact() throws IOException {
+        append("C");
+    }
+
+    /**
+     * Stamps the CSV a background checkpoint has written, still under a
+     * temp name, and forces the journal to disk so the stamp is there
+     * before that file replaces the CSV.
+     */
+    void appendCheckpoint(Path newCsv) throws IOException {
+        append("K," + stampOf(newCsv));
+        out.flush();
+        file.getFD().sync();
+    }
+
+    private void append(String record) throws IOException {
+        out.write(record);
+        out.write('\n');
+        records++;
+        bytes += record.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /** Pushes every buffered record to the file. */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Number of records written since the last checkpoint. */
+    public int size() {
+        return records;
+    }
+
+    /** Length of the journal file, buffered records included. Safe from any thread. */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Starts an empty journal against the current state of the CSV.
+     * Call after the CSV has been rewritten with everything in the journal.
+     */
+    public void reset() throws IOException {
+        rewrite(List.of());
+    }
+
+    /**
+     * Drops the records a background checkpoint folded into the CSV, once
+     * the CSV matches its K: the journal starts again against the current
+     * CSV with just the records after the C. Does nothing otherwise.
+     */
+    public void rebase() throws IOException {
+        out.flush();
+        List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+        int folded = foldedThrough(lines, stampOf(basePath));
+        if (folded < 0)
+            return;
+
+        List<String> kept = new ArrayList<>();
+        for (String line : lines.subList(folded + 1, lines.size())) {
+            if (!line.startsWith("K,"))
+                kept.add(line);
+        }
+        rewrite(kept);
+    }
+
+    // Atomically replaces the journal with a fresh header and `kept`
+    private void rewrite(List<String> kept) throws IOException {
+        if (out != null)
+            out.close();
+
+        Path tmp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        StringBuilder sb = new StringBuilder(stamp()).append('\n');
+        for (String line : kept)
+            sb.append(line).append('\n');
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, journalPath,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        openForAppend();
+        records = kept.size();
+    }
+
+    private String stamp() throws IOException {
+        return "#base," + stampOf(basePath);
+    }
+
+    // length and last-modified time; a rename keeps both
+    static String stampOf(Path file) throws IOException {
+        if (!Files.exists(file))
+            return "-1,-1";
+        return Files.size(file) + "," + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null)
+            out.close();
+    }
+}
@@ -0,0 +1,139 @@
+package Expensetracker.storage;
+
+import Expensetracker.metrics.Gauge;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Moves journal writes off the caller's thread. Writes are queued and a
+ * dedicated thread applies them to the {@link LedgerSink} (the
+ * {@link TransactionJournal} or {@link SqliteLedger}):
+ *
+ * <ul>
+ *   <li>the first write after a flush starts a {@link #FLUSH_MS} timer;
+ *       everything queued by then goes out with a single flush</li>
+ *   <li>{@link #close()} drains whatever is left before returning</li>
+ * </ul>
+ *
+ * A write that fails is reported to the error handler (on the writer
+ * thread) and not retried, the same as a failed synchronous append. A
+ * flush that fails is reported the same way; the sink keeps what it could
+ * not write (see {@link SqliteLedger#flush()}), and it goes out with the
+ * next flush, at the latest the one {@link #close()} makes.
+ * Flushes are timed by the {@code persist.journal} timer, and the writes
+ * still queued read from the {@code persist.journal.queue} gauge.
+ */
+public class WriteBehindJournal implements Closeable {
+
+    public interface Write {
+        void to(LedgerSink sink) throws IOException;
+    }
+
+    public static final long FLUSH_MS = 200;
+
+    private static final Timer FLUSH = Metrics.timer("persist.journal");
+    private static final Gauge QUEUE = Metrics.gauge("persist.journal.queue");
+
+    private final LedgerSink journal;
+    private final Consumer<IOException> onError;
+
+    private final Queue<Write> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    private volatile Runnable onFlush;
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ledger-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public WriteBehindJournal(LedgerSink journal, Consumer<IOException> onError) {
+        this.journal = journal;
+        this.onError = onError;
+        QUEUE.set(depth::get);
+    }
+
+    /** Runs {@code r} on the writer thread after every flush, e.g. to reread what was written. */
+    public void onFlush(Runnable r) {
+        onFlush = r;
+    }
+
+    /** Queues a write; returns at once. */
+    public void submit(Write w) {
+        queue.add(w);
+        depth.incrementAndGet();
+        if (flushPending.compareAndSet(false, true))
+            writer.schedule(this::flush, FLUSH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        flushPending.set(false);
+        drain(false);
+    }
+
+    // with force, flushes the sink even with nothing queued, for what an
+    // earlier flush could not write
+    private void drain(boolean force) {
+        if (queue.isEmpty() && !force)
+            return;
+
+        long start = Metrics.start();
+        int writes = 0;
+        Write w;
+        while ((w = queue.poll()) != null) {
+            depth.decrementAndGet();
+            writes++;
+            try {
+                w.to(journal);
+            } catch (IOException e) {
+                onError.accept(e);
+            }
+        }
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            onError.accept(e);
+        }
+
+        FLUSH.stop(start, writes);
+
+        Runnable r = onFlush;
+        if (r != null)
+            r.run();
+    }
+
+    /** Writes queued but not yet handed to the journal. */
+    public int queueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Writes out everything still queued and stops the writer thread. The
+     * journal itself stays open for the caller to checkpoint and close.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.execute(() -> drain(true));
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                throw new IOException("Journal writer did not finish, " + queueDepth() + " writes pending");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the journal", e);
+        }
+    }
+}
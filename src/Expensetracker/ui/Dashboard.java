@@ -0,0 +1,220 @@
+package Expensetracker.ui;
+
+import Expensetracker.index.CategoryTotals;
+import Expensetracker.index.TimeRollups;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.chart.PieChart;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.stage.Stage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The dashboard window: debits per category as a pie with a legend of
+ * amounts, and the {@link TrendChart} below.
+ *
+ * Built once and kept: closing only hides the window, and {@link #show()}
+ * brings the same one back. It follows the store as a listener. The
+ * categories touched by adds and deletes are collected and patched in on
+ * the FX thread, one pass per burst of changes: only their slice, legend
+ * row and trend line change. While the window is hidden the categories
+ * just pile up until it is shown again.
+ */
+public class Dashboard implements TransactionStore.Listener {
+
+    private static final Timer PATCH = Metrics.timer("chart.dashboard");
+
+    private final CategoryTotals totals;
+    private final Function<String, String> colors;
+
+    private final PieChart pie = new PieChart();
+    private final VBox legend = new VBox(8);
+    private final TrendChart trend;
+    private final Stage stage = new Stage();
+
+    // category code -> its slice, and its legend row and label
+    private final Map<Integer, PieChart.Data> slices = new HashMap<>();
+    private final Map<Integer, HBox> legendRows = new HashMap<>();
+    private final Map<Integer, Label> legendLabels = new HashMap<>();
+
+    // categories changed since the last patch; guarded by this
+    private final Set<Integer> dirty = new HashSet<>();
+    private boolean patchQueued;
+
+    /** {@code colors} maps a category to its CSS color. */
+    public Dashboard(TransactionStore store, CategoryTotals totals, TimeRollups rollups,
+            Function<String, String> colors) {
+        this.totals = totals;
+        this.colors = colors;
+
+        pie.setTitle("Expenses by Category");
+        trend = new TrendChart(rollups, colors);
+
+        ComboBox<String> filter = new ComboBox<>(FXCollections.observableArrayList(
+                "Daily", "Weekly", "Monthly", "Yearly"));
+        filter.setValue("Monthly");
+        filter.setOnAction(e -> trend.show(granularity(filter.getValue())));
+
+        for (int c = 0; c < totals.categoryCount(); c++)
+            patchSlice(c);
+        trend.show(granularity(filter.getValue()));
+
+        HBox pieSection = new HBox(30, pie, legend);
+        pieSection.setAlignment(Pos.CENTER_LEFT);
+
+        VBox root = new VBox(15, filter, pieSection, trend.node());
+        root.setPadding(new Insets(15));
+
+        stage.setTitle("Dashboard");
+        stage.setScene(new Scene(root, 900, 750));
+
+        store.addListener(this);
+    }
+
+    private static TimeRollups.Granularity granularity(String mode) {
+        if (mode.equals("Daily"))
+            return TimeRollups.Granularity.DAY;
+        if (mode.equals("Weekly"))
+            return TimeRollups.Granularity.WEEK;
+        if (mode.equals("Yearly"))
+            return TimeRollups.Granularity.YEAR;
+        return TimeRollups.Granularity.MONTH;
+    }
+
+    /** Shows the window, first catching up on changes made while it was hidden. */
+    public void show() {
+        stage.show();
+        patch();
+        stage.toFront();
+    }
+
+    // ---------------- store changes ----------------
+
+    @Override
+    public void rowAdded(TransactionStore store, int row) {
+        changed(store.categoryCode(row));
+    }
+
+    @Override
+    public void rowRemoved(TransactionStore store, int row) {
+        changed(store.categoryCode(row));
+    }
+
+    /** As {@link #rowRemoved} for every live row of a store it does not follow. */
+    public void removeRows(TransactionStore rows) {
+        for (int r = 0; r < rows.size(); r++) {
+            if (!rows.isDeleted(r))
+                changed(rows.categoryCode(r));
+        }
+    }
+
+    private synchronized void changed(int category) {
+        dirty.add(category);
+        if (!patchQueued) {
+            patchQueued = true;
+            Platform.runLater(this::patch);
+        }
+    }
+
+    private void patch() {
+        Set<Integer> categories;
+        synchronized (this) {
+            patchQueued = false;
+            if (dirty.isEmpty() || !stage.isShowing())
+                return;
+            categories = new HashSet<>(dirty);
+            dirty.clear();
+        }
+
+        long t0 = Metrics.start();
+        for (int c : categories)
+            patchSlice(c);
+        trend.refresh(categories);
+        PATCH.stop(t0, categories.size());
+    }
+
+    // ---------------- pie ----------------
+
+    private void patchSlice(int c) {
+
+        PieChart.Data slice = slices.get(c);
+
+        if (totals.debitCount(c) == 0) {
+            if (slice != null) {
+                pie.getData().remove(slice);
+                legend.getChildren().remove(legendRows.remove(c));
+                slices.remove(c);
+                legendLabels.remove(c);
+            }
+            return;
+        }
+
+        String category = Symbols.CATEGORIES.value(c);
+        double value = TransactionStore.fromPaise(totals.debitPaise(c));
+
+        if (slice == null) {
+            slice = newSlice(c, category, value);
+            slices.put(c, slice);
+            pie.getData().add(slice);
+        } else if (slice.getPieValue() != value) {
+            slice.setPieValue(value);
+        }
+
+        legendLabels.get(c).setText(category + "  ₹ " + String.format("%.2f", value));
+    }
+
+    private PieChart.Data newSlice(int c, String category, double value) {
+
+        String color = colors.apply(category);
+        PieChart.Data slice = new PieChart.Data(category, value);
+
+        // the share changes with every other slice, so the text is made on hover
+        Tooltip tip = new Tooltip();
+        tip.setOnShowing(e -> {
+            double total = 0;
+            for (PieChart.Data d : pie.getData())
+                total += d.getPieValue();
+            tip.setText(category +
+                    "\n₹ " + String.format("%.2f", slice.getPieValue()) +
+                    String.format(" (%.1f%%)", slice.getPieValue() / total * 100));
+        });
+
+        slice.nodeProperty().addListener((obs, oldNode, node) -> {
+            if (node != null) {
+                node.setStyle("-fx-pie-color: " + color + ";");
+                Tooltip.install(node, tip);
+            }
+        });
+
+        // Side info panel
+        Circle dot = new Circle(6, Color.web(color));
+        Label label = new Label();
+        label.setStyle("-fx-font-size: 13px;");
+
+        HBox row = new HBox(10, dot, label);
+        row.setAlignment(Pos.CENTER_LEFT);
+
+        legendRows.put(c, row);
+        legendLabels.put(c, label);
+        legend.getChildren().add(row);
+        return slice;
+    }
+}
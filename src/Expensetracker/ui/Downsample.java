@@ -0,0 +1,77 @@
+package Expensetracker.ui;
+
+/**
+ * Largest-triangle-three-buckets downsampling: picks which points of a line
+ * to keep so that a long series drawn with far fewer points still shows its
+ * peaks, dips and overall shape.
+ *
+ * The first and last points are always kept. The rest are split into
+ * equal buckets, and each bucket keeps the point forming the largest
+ * triangle with the point kept before it and the average of the next bucket.
+ */
+public final class Downsample {
+
+    private Downsample() {
+    }
+
+    /**
+     * Indices (ascending) of at most {@code threshold} points of
+     * ({@code x[i]}, {@code y[i]}), i &lt; {@code n}; x must be ascending.
+     * Every index if there are no more than {@code threshold} points.
+     */
+    public static int[] lttb(double[] x, double[] y, int n, int threshold) {
+
+        if (n <= threshold || n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++)
+                all[i] = i;
+            return all;
+        }
+        if (threshold < 3)
+            return new int[]{0, n - 1};
+
+        int[] kept = new int[threshold];
+        int k = 0;
+        kept[k++] = 0;
+
+        // the n - 2 inner points go into threshold - 2 buckets
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+
+        for (int b = 0; b < threshold - 2; b++) {
+
+            int from = (int) (b * every) + 1;
+            int to = (int) ((b + 1) * every) + 1;
+
+            // average of the next bucket; the last point for the last bucket
+            int nextFrom = to;
+            int nextTo = Math.min((int) ((b + 2) * every) + 1, n);
+            double avgX = 0, avgY = 0;
+            for (int j = nextFrom; j < nextTo; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            int len = nextTo - nextFrom;
+            avgX /= len;
+            avgY /= len;
+
+            double ax = x[a], ay = y[a];
+            double best = -1;
+            int pick = from;
+            for (int j = from; j < to; j++) {
+                // twice the triangle's area; the factor doesn't change the pick
+                double area = Math.abs((ax - avgX) * (y[j] - ay) - (ax - x[j]) * (avgY - ay));
+                if (area > best) {
+                    best = area;
+                    pick = j;
+                }
+            }
+
+            kept[k++] = pick;
+            a = pick;
+        }
+
+        kept[k] = n - 1;
+        return kept;
+    }
+}
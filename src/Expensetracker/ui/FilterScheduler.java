@@ -0,0 +1,125 @@
+package Expensetracker.ui;
+
+import Expensetracker.index.FilterEngine;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.TransactionStore;
+import javafx.application.Platform;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs filter queries on a background thread so typing into the filter bar
+ * never waits on a search.
+ *
+ * <ul>
+ *   <li>text fields go through {@link #submitDebounced}: the query only runs
+ *       once input has been quiet for {@link #DEBOUNCE_MS}</li>
+ *   <li>every submit supersedes the previous one; a query still waiting is
+ *       dropped, one already running stops at its next check</li>
+ *   <li>the query runs on a {@link FilterEngine#snapshot}: the store's read
+ *       lock is held only while that is taken, so adds and deletes on the
+ *       FX thread do not wait for the search</li>
+ *   <li>only the newest answer reaches the table, via
+ *       {@link Platform#runLater}; if the store changed since it was
+ *       computed it is thrown away and the query runs again</li>
+ * </ul>
+ *
+ * Submit from the FX thread only.
+ */
+public class FilterScheduler {
+
+    public static final long DEBOUNCE_MS = 150;
+
+    private static final Timer QUERY = Metrics.timer("filter");
+    private static final Timer CANCELLED = Metrics.timer("filter.cancelled");
+
+    private final TransactionStore store;
+    private final FilterEngine engine;
+    private final FilteredRows view;
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "filter-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // id of the newest submit; anything older is stale
+    private final AtomicLong generation = new AtomicLong();
+    private ScheduledFuture<?> pending;
+
+    public FilterScheduler(TransactionStore store, FilterEngine engine, FilteredRows view) {
+        this.store = store;
+        this.engine = engine;
+        this.view = view;
+    }
+
+    /** Evaluates {@code q} as soon as the worker is free. */
+    public void submit(FilterEngine.Query q) {
+        schedule(q, 0);
+    }
+
+    /** Evaluates {@code q} unless another query arrives within the debounce delay. */
+    public void submitDebounced(FilterEngine.Query q) {
+        schedule(q, DEBOUNCE_MS);
+    }
+
+    private void schedule(FilterEngine.Query q, long delayMs) {
+        long id = generation.incrementAndGet();
+        if (pending != null)
+            pending.cancel(false);
+        pending = worker.schedule(() -> evaluate(q, id), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------- worker thread ----------------
+
+    private void evaluate(FilterEngine.Query q, long id) {
+
+        BooleanSupplier stale = () -> generation.get() != id;
+        if (stale.getAsBoolean())
+            return;
+
+        long t0 = Metrics.start();
+        int[] rows;
+        long version;
+        try {
+            FilterEngine.Snapshot snap = engine.snapshot(q);
+            version = snap.version();
+            rows = engine.run(snap, stale);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (rows == null) {
+            CANCELLED.stop(t0);
+            return;
+        }
+        QUERY.stop(t0, rows.length);
+        Platform.runLater(() -> publish(q, id, version, rows));
+    }
+
+    // ---------------- FX thread ----------------
+
+    private void publish(FilterEngine.Query q, long id, long version, int[] rows) {
+        if (generation.get() != id)
+            return; // superseded while queued
+
+        if (store.version() != version) {
+            // rows were added or deleted since; row numbers may have moved
+            submit(q);
+            return;
+        }
+        view.setQuery(q, rows);
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        worker.shutdownNow();
+    }
+}
@@ -0,0 +1,273 @@
+package Expensetracker.ui;
+
+import Expensetracker.index.FilterEngine;
+import Expensetracker.model.Transaction;
+import javafx.collections.ListChangeListener;
+import javafx.collections.transformation.TransformationList;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rows of a {@link StoreBackedList} that match the current filter query,
+ * as the TableView sees them. Replaces FilteredList: the match set comes from
+ * {@link FilterEngine#run} in one go instead of a predicate call per row,
+ * and source adds/removes are patched in without re-running the query.
+ *
+ * A delete in the source is an update of a row that is now deleted, and the
+ * row is dropped here as it no longer matches. Runs of updates or of
+ * removes within one change (a bulk delete, a compaction) are patched in
+ * with a single pass over the rows.
+ */
+public class FilteredRows extends TransformationList<Transaction, Transaction> {
+
+    private final FilterEngine engine;
+    private FilterEngine.Query query = FilterEngine.Query.all();
+
+    // matching source indices, ascending
+    private int[] rows = new int[0];
+    private int size;
+
+    public FilteredRows(StoreBackedList source, FilterEngine engine) {
+        super(source);
+        this.engine = engine;
+        setRows(engine.run(query));
+    }
+
+    public FilterEngine.Query getQuery() {
+        return query;
+    }
+
+    public void setQuery(FilterEngine.Query q) {
+        setQuery(q, engine.run(q));
+    }
+
+    /**
+     * Switches to {@code q} with its match set already worked out, e.g. by a
+     * {@link FilterScheduler} off the FX thread against the current source.
+     */
+    public void setQuery(FilterEngine.Query q, int[] matches) {
+        query = q;
+        setRows(matches);
+    }
+
+    /** Publishes an already computed match set for the current source. */
+    public void setRows(int[] matches) {
+        beginChange();
+        if (size > 0)
+            nextRemove(0, new RowsView(getSource(), Arrays.copyOf(rows, size)));
+        rows = matches;
+        size = matches.length;
+        if (size > 0)
+            nextAdd(0, size);
+        endChange();
+    }
+
+    // a run of update or remove sub-changes, patched in together
+    private int[] runFrom = new int[16];
+    private int[] runCount = new int[16];
+    private final List<List<? extends Transaction>> runRemoved = new ArrayList<>();
+    private int runs, runRemovedSoFar;
+
+    @Override
+    protected void sourceChanged(ListChangeListener.Change<? extends Transaction> c) {
+
+        beginChange();
+        while (c.next()) {
+            if (c.wasPermutated()) {
+                flushRuns();
+                setRows(engine.run(query));
+            } else if (c.wasUpdated()) {
+                if (!runRemoved.isEmpty())
+                    flushRuns();
+                addRun(c.getFrom(), c.getTo() - c.getFrom());
+            } else if (c.wasRemoved() && !c.wasAdded()) {
+                if (runs > 0 && runRemoved.isEmpty())
+                    flushRuns();
+                // sub-changes count positions after the earlier removes; the
+                // pass works in positions from before the change
+                addRun(c.getFrom() + runRemovedSoFar, c.getRemovedSize());
+                runRemoved.add(c.getRemoved());
+                runRemovedSoFar += c.getRemovedSize();
+            } else {
+                flushRuns();
+                if (c.wasRemoved())
+                    removeSourceRuns(new int[]{c.getFrom()}, new int[]{c.getRemovedSize()},
+                            List.of(c.getRemoved()), 1);
+                if (c.wasAdded())
+                    addSourceRange(c.getFrom(), c.getTo());
+            }
+        }
+        flushRuns();
+        endChange();
+    }
+
+    private void addRun(int from, int count) {
+        if (runs == runFrom.length) {
+            runFrom = Arrays.copyOf(runFrom, runs * 2);
+            runCount = Arrays.copyOf(runCount, runs * 2);
+        }
+        runFrom[runs] = from;
+        runCount[runs] = count;
+        runs++;
+    }
+
+    private void flushRuns() {
+        if (runs == 0)
+            return;
+        if (runRemoved.isEmpty())
+            updateSourceRuns(runFrom, runCount, runs);
+        else
+            removeSourceRuns(runFrom, runCount, runRemoved, runs);
+        runs = 0;
+        runRemovedSoFar = 0;
+        runRemoved.clear();
+    }
+
+    // Ascending runs of source rows [from, from + count) went away
+    private void removeSourceRuns(int[] from, int[] count, List<List<? extends Transaction>> removed, int n) {
+
+        int kept = 0, k = 0, shift = 0;
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            while (k < n && from[k] + count[k] <= row)
+                shift += count[k++];
+            if (k < n && row >= from[k]) {
+                nextRemove(kept, removed.get(k).get(row - from[k]));
+                continue;
+            }
+            rows[kept++] = row - shift;
+        }
+        size = kept;
+    }
+
+    // Ascending runs of source rows [from, from + count) changed in place:
+    // drop the ones that stopped matching, add the ones that started to
+    private void updateSourceRuns(int[] from, int[] count, int n) {
+
+        int[] now = new int[0];
+        int matched = 0;
+        for (int k = 0; k < n; k++) {
+            for (int row = from[k]; row < from[k] + count[k]; row++) {
+                if (engine.matches(query, row)) {
+                    if (matched == now.length)
+                        now = Arrays.copyOf(now, Math.max(16, matched * 2));
+                    now[matched++] = row;
+                }
+            }
+        }
+
+        int[] out = new int[size + matched];
+        int kept = 0, i = 0, j = 0, k = 0;
+        while (i < size || j < matched) {
+            int row = i < size ? rows[i] : Integer.MAX_VALUE;
+            int hit = j < matched ? now[j] : Integer.MAX_VALUE;
+
+            if (hit < row) {
+                out[kept] = hit;
+                nextAdd(kept, kept + 1);
+                kept++;
+                j++;
+                continue;
+            }
+            i++;
+            if (hit == row) {
+                out[kept++] = row;
+                j++;
+                continue;
+            }
+            while (k < n && from[k] + count[k] <= row)
+                k++;
+            if (k < n && row >= from[k])
+                nextRemove(kept, getSource().get(row));
+            else
+                out[kept++] = row;
+        }
+        rows = out;
+        size = kept;
+    }
+
+    private void addSourceRange(int from, int to) {
+
+        int count = to - from;
+        int at = lowerBound(from);
+        for (int i = at; i < size; i++)
+            rows[i] += count;
+
+        int[] added = new int[count];
+        int n = 0;
+        for (int row = from; row < to; row++) {
+            if (engine.matches(query, row))
+                added[n++] = row;
+        }
+        if (n == 0)
+            return;
+
+        if (size + n > rows.length)
+            rows = Arrays.copyOf(rows, Math.max(size + n, rows.length + (rows.length >> 1)));
+        System.arraycopy(rows, at, rows, at + n, size - at);
+        System.arraycopy(added, 0, rows, at, n);
+        size += n;
+        nextAdd(at, at + n);
+    }
+
+    // first position whose source index is >= source
+    private int lowerBound(int source) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rows[mid] < source)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public int getSourceIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        return rows[index];
+    }
+
+    @Override
+    public int getViewIndex(int source) {
+        int i = lowerBound(source);
+        return i < size && rows[i] == source ? i : -1;
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return getSource().get(getSourceIndex(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Removed-item list for a full replace, only materialized if asked for
+    private static class RowsView extends AbstractList<Transaction> {
+        private final List<? extends Transaction> source;
+        private final int[] rows;
+
+        RowsView(List<? extends Transaction> source, int[] rows) {
+            this.source = source;
+            this.rows = rows;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            int row = rows[index];
+            return row < source.size() ? source.get(row) : null;
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package Expensetracker.ui;
+
+import Expensetracker.index.FilterEngine;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.storage.SqliteLedger;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ObservableList of a {@link SqliteLedger.View} for the TableView, for
+ * ledgers too big to load: only pages around the rows the table asks for
+ * are held, never the whole table.
+ *
+ * <ul>
+ *   <li>rows come in pages of {@link #PAGE_ROWS}, and at most
+ *       {@link #MAX_PAGES} pages are kept; the least recently used goes
+ *       first</li>
+ *   <li>a row whose page is not in reads as {@link #UNAVAILABLE} while the
+ *       page is fetched on the "page-loader" thread; its rows are then
+ *       replaced in place, so the FX thread never waits on the database</li>
+ *   <li>filtering, sorting and {@link #refresh()} open a new view on the
+ *       loader thread, and the list switches to it in one change once it
+ *       is counted; a newer request supersedes one still waiting</li>
+ * </ul>
+ *
+ * {@link #get(int)} never returns null. Besides a page on its way, a row
+ * reads as {@link #UNAVAILABLE} if its page failed to read (it is asked for
+ * again next time) or the table shrank since the view was counted (until
+ * the next {@link #refresh()}, which every flush of the writer brings). An
+ * evicted page is fetched again the same way. Use from the FX thread only.
+ */
+public class PagedRows extends ObservableListBase<Transaction> {
+
+    public static final int PAGE_ROWS = 256;
+    public static final int MAX_PAGES = 64;
+
+    /** Stands in for a row that is not read yet, or could not be; see the class comment. */
+    public static final Transaction UNAVAILABLE =
+            new Transaction(LocalDate.EPOCH, "General", "Debit", "Cash", 0, "(unavailable)");
+
+    private static final Timer PAGE = Metrics.timer("load.page");
+
+    private final SqliteLedger ledger;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // id of the newest view requested; anything older is stale
+    private final AtomicLong generation = new AtomicLong();
+
+    private FilterEngine.Query query = FilterEngine.Query.all();
+    private SqliteLedger.Order order = SqliteLedger.Order.ID;
+    private boolean descending;
+
+    // read by the loader to drop pages of an old view
+    private volatile SqliteLedger.View view;
+    private final Map<Integer, SqliteLedger.Page> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SqliteLedger.Page> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+
+    /** Opens the unfiltered view in id order before returning. */
+    public PagedRows(SqliteLedger ledger) throws SQLException {
+        this.ledger = ledger;
+        this.view = ledger.view(query, order, false);
+    }
+
+    public FilterEngine.Query getQuery() {
+        return query;
+    }
+
+    public void setQuery(FilterEngine.Query q) {
+        query = q;
+        reopen();
+    }
+
+    /** Sorts by {@code o}; ties, and {@link SqliteLedger.Order#ID}, go by id. */
+    public void setOrder(SqliteLedger.Order o, boolean desc) {
+        if (o == order && desc == descending)
+            return;
+        order = o;
+        descending = desc;
+        reopen();
+    }
+
+    /** Rereads the table, e.g. once changes have been written to it. */
+    public void refresh() {
+        reopen();
+    }
+
+    @Override
+    public Transaction get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Row " + index + " of " + size());
+
+        SqliteLedger.Page page = pages.get(index / PAGE_ROWS);
+        int row = index % PAGE_ROWS;
+        if (page == null) {
+            request(index / PAGE_ROWS);
+            return UNAVAILABLE;
+        }
+        // the table shrank since the view was counted
+        return row < page.size() ? page.get(row) : UNAVAILABLE;
+    }
+
+    @Override
+    public int size() {
+        return view.size();
+    }
+
+    /**
+     * The rows at {@code positions}, in id order and under their own ids.
+     * Pages that are not in are read here and now, and not kept.
+     */
+    public TransactionStore rows(int[] positions) throws SQLException {
+
+        int n = positions.length;
+        TransactionStore[] from = new TransactionStore[n];
+        int[] row = new int[n];
+        Map<Integer, SqliteLedger.Page> read = new HashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            int p = positions[i] / PAGE_ROWS;
+            SqliteLedger.Page page = pages.get(p);
+            if (page == null)
+                page = read.get(p);
+            if (page == null) {
+                page = view.read(p * PAGE_ROWS, PAGE_ROWS);
+                read.put(p, page);
+            }
+            if (positions[i] % PAGE_ROWS >= page.size())
+                throw new IndexOutOfBoundsException("Row " + positions[i] + " is gone from the table");
+            from[i] = page.rows;
+            row[i] = page.row(positions[i] % PAGE_ROWS);
+        }
+
+        // ids must go in ascending
+        Integer[] byId = new Integer[n];
+        for (int i = 0; i < n; i++)
+            byId[i] = i;
+        Arrays.sort(byId, (a, b) -> Long.compare(from[a].id(row[a]), from[b].id(row[b])));
+
+        TransactionStore out = new TransactionStore();
+        long last = Long.MIN_VALUE;
+        for (int i : byId) {
+            TransactionStore st = from[i];
+            int r = row[i];
+            if (st.id(r) == last)
+                continue; // the same row twice
+            last = st.id(r);
+            byte[] note = st.note(r).getBytes(StandardCharsets.UTF_8);
+            out.add(st.id(r), st.epochDay(r), st.category(r), st.type(r), st.method(r),
+                    st.amountPaise(r), note, 0, note.length);
+        }
+        return out;
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        loader.shutdownNow();
+    }
+
+    // ---------------- loader thread ----------------
+
+    private void request(int p) {
+        if (!loading.add(p))
+            return;
+
+        SqliteLedger.View v = view;
+        loader.execute(() -> {
+            if (v != view)
+                return; // publish() has cleared loading
+
+            long t0 = Metrics.start();
+            SqliteLedger.Page page;
+            try {
+                page = v.read(p * PAGE_ROWS, PAGE_ROWS);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                Platform.runLater(() -> {
+                    if (v == view)
+                        loading.remove(p);
+                });
+                return;
+            }
+            PAGE.stop(t0, page.size());
+            Platform.runLater(() -> install(v, p, page));
+        });
+    }
+
+    private void reopen() {
+        long id = generation.incrementAndGet();
+        FilterEngine.Query q = query;
+        SqliteLedger.Order o = order;
+        boolean desc = descending;
+
+        loader.execute(() -> {
+            if (generation.get() != id)
+                return;
+            try {
+                SqliteLedger.View v = ledger.view(q, o, desc);
+                Platform.runLater(() -> publish(id, v));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // ---------------- FX thread ----------------
+
+    private void install(SqliteLedger.View v, int p, SqliteLedger.Page page) {
+        if (v != view)
+            return; // the view changed while this was read
+
+        loading.remove(p);
+        pages.put(p, page);
+
+        // the table saw placeholders for these rows until now
+        int from = p * PAGE_ROWS;
+        int to = Math.min(from + page.size(), size());
+        if (to <= from)
+            return;
+        beginChange();
+        nextReplace(from, to, Collections.nCopies(to - from, UNAVAILABLE));
+        endChange();
+    }
+
+    private void publish(long id, SqliteLedger.View v) {
+        if (generation.get() != id)
+            return; // superseded while queued
+
+        // the old rows are not all here to hand out, so they are left blank
+        beginChange();
+        if (size() > 0)
+            nextRemove(0, Collections.nCopies(size(), null));
+        view = v;
+        pages.clear();
+        loading.clear();
+        if (size() > 0)
+            nextAdd(0, size());
+        endChange();
+    }
+}
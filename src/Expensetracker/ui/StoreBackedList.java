@@ -0,0 +1,152 @@
+package Expensetracker.ui;
+
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * ObservableList view of a {@link TransactionStore} for the TableView.
+ *
+ * Rows live only in the store's columns; {@link #get(int)} hands out a fresh
+ * Transaction for the row, so only rows that are actually on screen (or being
+ * filtered) exist as objects at any time.
+ *
+ * Deleted rows are still in the list, as the store still has them, until
+ * {@link #compact()}; {@link FilteredRows} is what hides them.
+ */
+public class StoreBackedList extends ObservableListBase<Transaction> {
+
+    private TransactionStore store;
+
+    public StoreBackedList(TransactionStore store) {
+        this.store = store;
+    }
+
+    public TransactionStore store() {
+        return store;
+    }
+
+    /** Swaps in a freshly loaded store, firing a single replace change. */
+    public void setStore(TransactionStore loaded) {
+        beginChange();
+        int old = store.size();
+        if (old > 0)
+            nextRemove(0, new RemovedRows(store, old));
+        store = loaded;
+        if (store.size() > 0)
+            nextAdd(0, store.size());
+        endChange();
+    }
+
+    @Override
+    public Transaction get(int index) {
+        return store.get(index);
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public boolean add(Transaction t) {
+        int row = store.add(t);
+        beginChange();
+        nextAdd(row, row + 1);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Transaction> batch) {
+        if (batch.isEmpty())
+            return false;
+
+        int from = store.size();
+        for (Transaction t : batch)
+            store.add(t);
+
+        beginChange();
+        nextAdd(from, store.size());
+        endChange();
+        return true;
+    }
+
+    /**
+     * Deletes {@code rows} (ascending) in one go. They stay in the list,
+     * marked deleted, until {@link #compact()}, so this is a single change
+     * with an update for each.
+     */
+    public void removeRows(int[] rows) {
+        if (rows.length == 0)
+            return;
+
+        store.removeAll(rows);
+
+        beginChange();
+        for (int row : rows)
+            nextUpdate(row);
+        endChange();
+    }
+
+    /** Deletes the transactions with these ids, as {@link #removeRows} does. */
+    public void removeIds(long[] ids) {
+        int[] rows = store.slotsOf(ids);
+        Arrays.sort(rows);
+        removeRows(rows);
+    }
+
+    /**
+     * Drops the deleted rows from the store, firing their removal as one
+     * change. Returns false if there were none.
+     */
+    public boolean compact() {
+        int[] newRow = store.compact();
+        if (newRow == null)
+            return false;
+
+        // the rows are gone by now, so the removed items are left blank
+        beginChange();
+        int removed = 0;
+        for (int row = 0; row < newRow.length; ) {
+            if (newRow[row] >= 0) {
+                row++;
+                continue;
+            }
+            int end = row;
+            while (end < newRow.length && newRow[end] < 0)
+                end++;
+            nextRemove(row - removed, Collections.nCopies(end - row, null));
+            removed += end - row;
+            row = end;
+        }
+        endChange();
+        return true;
+    }
+
+    // Removed-item list for a bulk replace, materialized only if a listener asks
+    private static class RemovedRows extends AbstractList<Transaction> {
+        private final TransactionStore rows;
+        private final int size;
+
+        RemovedRows(TransactionStore rows, int size) {
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public Transaction get(int index) {
+            return rows.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
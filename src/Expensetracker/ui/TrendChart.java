@@ -0,0 +1,331 @@
+package Expensetracker.ui;
+
+import Expensetracker.index.TimeRollups;
+import Expensetracker.metrics.Metrics;
+import Expensetracker.metrics.Timer;
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import javafx.collections.FXCollections;
+import javafx.scene.Node;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.StackPane;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The dashboard's spending trend: one line per category over the
+ * {@link TimeRollups} buckets of the chosen granularity.
+ *
+ * Long histories are downsampled with {@link Downsample#lttb} to about one
+ * point every {@link #PX_PER_POINT} pixels of chart width, and drawn again
+ * when the chart is resized enough to change that. Each drawn point stands
+ * for the run of buckets around it; hovering shows its own value and, if
+ * it covers more than one bucket, the total, low and high of that run.
+ *
+ * Changes are patched in: {@link #refresh} redoes only the given
+ * categories' lines, and reuses their data points and nodes wherever the
+ * line still has a point there.
+ *
+ * There is a single tooltip for the whole chart, filled in when a point is
+ * hovered, instead of one per point.
+ */
+public class TrendChart {
+
+    public static final int PX_PER_POINT = 4;
+    private static final int MIN_POINTS = 16;
+    private static final double DEFAULT_WIDTH = 860;
+
+    private static final Timer RENDER = Metrics.timer("chart.line");
+
+    /** What a drawn point stands for: buckets [from, to] of one category's series. */
+    private static class Point {
+        final String category;
+        final TimeRollups.Granularity g;
+        final int[] buckets;
+        final long[] paise;
+        final int at, from, to;
+
+        Point(String category, TimeRollups.Granularity g, int[] buckets, long[] paise,
+                int at, int from, int to) {
+            this.category = category;
+            this.g = g;
+            this.buckets = buckets;
+            this.paise = paise;
+            this.at = at;
+            this.from = from;
+            this.to = to;
+        }
+
+        String text() {
+            StringBuilder sb = new StringBuilder()
+                    .append(category)
+                    .append("\nDate: ").append(TimeRollups.label(g, buckets[at]))
+                    .append("\n₹ ").append(TransactionStore.fromPaise(paise[at]));
+
+            if (to > from) {
+                long sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+                for (int i = from; i <= to; i++) {
+                    sum += paise[i];
+                    min = Math.min(min, paise[i]);
+                    max = Math.max(max, paise[i]);
+                }
+                sb.append("\n\n").append(TimeRollups.label(g, buckets[from]))
+                        .append(" to ").append(TimeRollups.label(g, buckets[to]))
+                        .append(" (").append(to - from + 1).append(" periods)")
+                        .append("\nTotal ₹ ").append(TransactionStore.fromPaise(sum))
+                        .append("\nLow ₹ ").append(TransactionStore.fromPaise(min))
+                        .append("   High ₹ ").append(TransactionStore.fromPaise(max));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final TimeRollups rollups;
+    private final Function<String, String> colors;
+    private final LineChart<String, Number> chart;
+    private final Tooltip tip = new Tooltip();
+
+    // category code -> its line, and the buckets that line has points on
+    private final Map<Integer, XYChart.Series<String, Number>> lines = new HashMap<>();
+    private final Map<Integer, int[]> shown = new HashMap<>();
+
+    private TimeRollups.Granularity granularity = TimeRollups.Granularity.MONTH;
+    private int renderedCap;
+
+    /** {@code colors} maps a category to its CSS color. */
+    public TrendChart(TimeRollups rollups, Function<String, String> colors) {
+        this.rollups = rollups;
+        this.colors = colors;
+
+        CategoryAxis x = new CategoryAxis();
+        x.setLabel("Date");
+        x.setAutoRanging(false);
+
+        NumberAxis y = new NumberAxis();
+        y.setLabel("Amount (₹)");
+
+        chart = new LineChart<>(x, y);
+        chart.setLegendVisible(false);
+        // points are patched in place; animating each change only costs frames
+        chart.setAnimated(false);
+
+        chart.addEventHandler(MouseEvent.MOUSE_ENTERED_TARGET, e -> {
+            if (e.getTarget() instanceof Node && ((Node) e.getTarget()).getUserData() instanceof Point) {
+                Node n = (Node) e.getTarget();
+                tip.setText(((Point) n.getUserData()).text());
+                tip.show(n, e.getScreenX() + 12, e.getScreenY() + 12);
+            }
+        });
+        chart.addEventHandler(MouseEvent.MOUSE_EXITED_TARGET, e -> {
+            if (e.getTarget() instanceof Node && ((Node) e.getTarget()).getUserData() instanceof Point)
+                tip.hide();
+        });
+
+        // redraw once a resize changes the point budget by a fifth
+        chart.widthProperty().addListener((obs, o, w) -> {
+            int cap = cap();
+            if (renderedCap > 0 && Math.abs(cap - renderedCap) * 5 > renderedCap)
+                refreshAll();
+        });
+    }
+
+    public LineChart<String, Number> node() {
+        return chart;
+    }
+
+    /** Switches granularity; every line is patched over to the new buckets. */
+    public void show(TimeRollups.Granularity g) {
+        granularity = g;
+        refreshAll();
+    }
+
+    private void refreshAll() {
+        Set<Integer> all = new HashSet<>(lines.keySet());
+        for (int c = 0; c < rollups.categoryCount(granularity); c++)
+            all.add(c);
+        refresh(all);
+    }
+
+    private int cap() {
+        double w = chart.getWidth() > 0 ? chart.getWidth() : DEFAULT_WIDTH;
+        return Math.max(MIN_POINTS, (int) (w / PX_PER_POINT));
+    }
+
+    // time-proportional x for a bucket, so each line downsamples on its own
+    private static double x(TimeRollups.Granularity g, int bucket) {
+        return g == TimeRollups.Granularity.WEEK ? bucket / 100 * 53 + bucket % 100 : bucket;
+    }
+
+    /**
+     * Brings the lines of {@code categories} up to date with the rollups.
+     * Existing data points (and their nodes) are reused and only get new
+     * values where they changed; lines grow, shrink, appear or go away as
+     * needed. Other categories' lines are not touched.
+     */
+    public void refresh(Collection<Integer> categories) {
+
+        long t0 = Metrics.start();
+        TimeRollups.Granularity g = granularity;
+        int cap = cap();
+        renderedCap = cap;
+        long patched = 0;
+
+        tip.hide();
+
+        // points first, so the axis can be laid out for them before they go in
+        Map<Integer, List<Point>> next = new HashMap<>();
+        for (int c : categories) {
+            NavigableMap<Integer, long[]> rollup = rollups.series(g, c);
+            next.put(c, rollup.isEmpty() ? null : downsample(g, c, rollup, cap));
+        }
+
+        for (Map.Entry<Integer, List<Point>> e : next.entrySet()) {
+            List<Point> pts = e.getValue();
+            if (pts == null) {
+                shown.remove(e.getKey());
+                continue;
+            }
+            int[] b = new int[pts.size()];
+            for (int k = 0; k < b.length; k++)
+                b[k] = pts.get(k).buckets[pts.get(k).at];
+            shown.put(e.getKey(), b);
+        }
+
+        // only buckets some line has a point on get a slot on the axis
+        TreeSet<Integer> used = new TreeSet<>();
+        for (int[] b : shown.values())
+            for (int bucket : b)
+                used.add(bucket);
+        List<String> labels = new ArrayList<>(used.size());
+        for (int b : used)
+            labels.add(TimeRollups.label(g, b));
+        CategoryAxis axis = (CategoryAxis) chart.getXAxis();
+        if (!axis.getCategories().equals(labels))
+            axis.setCategories(FXCollections.observableArrayList(labels));
+
+        for (Map.Entry<Integer, List<Point>> e : next.entrySet()) {
+            int c = e.getKey();
+            List<Point> pts = e.getValue();
+            XYChart.Series<String, Number> series = lines.get(c);
+
+            if (pts == null) {
+                if (series != null) {
+                    chart.getData().remove(series);
+                    lines.remove(c);
+                }
+                continue;
+            }
+            if (series == null) {
+                series = newSeries(c);
+                lines.put(c, series);
+                chart.getData().add(series);
+            }
+            patched += patch(series.getData(), pts);
+        }
+
+        RENDER.stop(t0, patched);
+    }
+
+    private XYChart.Series<String, Number> newSeries(int c) {
+        String category = Symbols.CATEGORIES.value(c);
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        series.setName(category);
+
+        String color = colors.apply(category);
+        series.nodeProperty().addListener((obs, o, node) -> {
+            if (node != null)
+                node.setStyle("-fx-stroke: " + color + ";");
+        });
+        return series;
+    }
+
+    private List<Point> downsample(TimeRollups.Granularity g, int c,
+            NavigableMap<Integer, long[]> rollup, int cap) {
+
+        int n = rollup.size();
+        int[] buckets = new int[n];
+        long[] paise = new long[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int i = 0;
+        for (Map.Entry<Integer, long[]> e : rollup.entrySet()) {
+            buckets[i] = e.getKey();
+            paise[i] = e.getValue()[0];
+            xs[i] = x(g, buckets[i]);
+            ys[i] = paise[i];
+            i++;
+        }
+
+        int[] kept = Downsample.lttb(xs, ys, n, cap);
+
+        String category = Symbols.CATEGORIES.value(c);
+        List<Point> pts = new ArrayList<>(kept.length);
+        for (int k = 0; k < kept.length; k++) {
+            int at = kept[k];
+            // each kept point covers the buckets up to halfway to its neighbours
+            int from = k == 0 ? 0 : (kept[k - 1] + at) / 2 + 1;
+            int to = k == kept.length - 1 ? n - 1 : (at + kept[k + 1]) / 2;
+            pts.add(new Point(category, g, buckets, paise, at, from, to));
+        }
+        return pts;
+    }
+
+    // Reuses data points position by position; returns how many changed
+    private static int patch(List<XYChart.Data<String, Number>> data, List<Point> pts) {
+
+        int before = data.size();
+        int changed = 0;
+        int common = Math.min(data.size(), pts.size());
+
+        for (int k = 0; k < common; k++) {
+            XYChart.Data<String, Number> d = data.get(k);
+            Point p = pts.get(k);
+            String label = TimeRollups.label(p.g, p.buckets[p.at]);
+            Double value = TransactionStore.fromPaise(p.paise[p.at]);
+
+            boolean moved = false;
+            if (!label.equals(d.getXValue())) {
+                d.setXValue(label);
+                moved = true;
+            }
+            if (!value.equals(d.getYValue())) {
+                d.setYValue(value);
+                moved = true;
+            }
+            d.getNode().setUserData(p);
+            if (moved)
+                changed++;
+        }
+
+        if (pts.size() > common) {
+            List<XYChart.Data<String, Number>> added = new ArrayList<>(pts.size() - common);
+            for (int k = common; k < pts.size(); k++) {
+                Point p = pts.get(k);
+                XYChart.Data<String, Number> d = new XYChart.Data<>(
+                        TimeRollups.label(p.g, p.buckets[p.at]), TransactionStore.fromPaise(p.paise[p.at]));
+                StackPane symbol = new StackPane();
+                symbol.setUserData(p);
+                d.setNode(symbol);
+                added.add(d);
+            }
+            data.addAll(added);
+        } else if (data.size() > common) {
+            data.subList(common, data.size()).clear();
+        }
+        return changed + Math.abs(pts.size() - before);
+    }
+}
@@ -1,37 +1,188 @@
 package Expensetracker.util;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class DBConnection {
+/**
+ * Small connection pool for the SQLite ledger database:
+ *
+ * <ul>
+ *   <li>one writer connection; {@link #write} calls are serialized and each
+ *       one is committed (or rolled back) as a transaction</li>
+ *   <li>a few query-only reader connections handed out by {@link #read};
+ *       under WAL they run alongside the writer</li>
+ *   <li>every connection keeps its own cache of prepared statements</li>
+ * </ul>
+ *
+ * Connections that stop answering are replaced when they are next handed
+ * out, and idle ones by {@link #healthCheck()}, which runs every
+ * {@link #HEALTH_CHECK_S} seconds on a "db-health" thread.
+ * {@link #close()} waits for borrowed readers to come back before closing
+ * everything.
+ *
+ * The shared pool's database path comes from {@code -Dexpensetracker.db},
+ * falling back to the usual expenses.db location.
+ */
+public class DBConnection implements AutoCloseable {
 
-    private static Connection connection;
+    public interface Work<T> {
+        T run(Handle db) throws SQLException;
+    }
 
-    public static Connection getConnection() {
-        try {
-            if (connection == null) {
+    /** A pooled connection and its prepared-statement cache. Only valid inside a Work. */
+    public static class Handle {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= STATEMENT_CACHE)
+                            return false;
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
 
-                File dbFile = new File(
-                        "C:\\Users\\shiva\\OneDrive\\Documents\\Desktop\\Expense_tracker_app\\expenses.db");
+        Handle(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection connection() {
+            return connection;
+        }
 
-                System.out.println("DATABASE LOCATION: " + dbFile.getAbsolutePath());
+        /** The cached statement for {@code sql}, prepared on first use. */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null || ps.isClosed()) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return ps;
+        }
 
-                connection = DriverManager.getConnection(
-                        "jdbc:sqlite:" + dbFile.getAbsolutePath());
+        boolean isAlive() {
+            try {
+                return connection.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
 
-                createTables();
-                System.out.println("Database connected successfully");
+        void close() {
+            for (PreparedStatement ps : statements.values())
+                closeQuietly(ps);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return connection;
+
+        private static void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static final String DEFAULT_PATH =
+            "C:\\Users\\shiva\\OneDrive\\Documents\\Desktop\\Expense_tracker_app\\expenses.db";
+
+    public static final long HEALTH_CHECK_S = 60;
+
+    private static final int STATEMENT_CACHE = 32;
+    private static final long BORROW_TIMEOUT_S = 30;
+
+    private static DBConnection shared;
+
+    private final String url;
+    private final int readerCount;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Handle writer; // guarded by writeLock
+
+    private final BlockingQueue<Handle> idleReaders;
+    private volatile boolean closed;
+
+    private final ScheduledExecutorService health = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "db-health");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The app-wide pool, opened on first use. */
+    public static synchronized DBConnection shared() throws SQLException {
+        if (shared == null || shared.closed) {
+            Path db = Paths.get(System.getProperty("expensetracker.db", DEFAULT_PATH));
+            int readers = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            shared = new DBConnection(db, readers);
+        }
+        return shared;
     }
 
-    private static void createTables() {
-        try (Statement st = connection.createStatement()) {
+    public DBConnection(Path dbFile, int readers) throws SQLException {
+        url = "jdbc:sqlite:" + dbFile.toAbsolutePath();
+        readerCount = readers;
+        idleReaders = new ArrayBlockingQueue<>(readers);
+
+        System.out.println("DATABASE LOCATION: " + dbFile.toAbsolutePath());
+
+        writer = openWriter();
+        try {
+            for (int i = 0; i < readers; i++)
+                idleReaders.add(openReader());
+        } catch (SQLException e) {
+            for (Handle h : idleReaders)
+                h.close();
+            writer.close();
+            health.shutdown();
+            throw e;
+        }
+        health.scheduleWithFixedDelay(this::healthCheck, HEALTH_CHECK_S, HEALTH_CHECK_S, TimeUnit.SECONDS);
+        System.out.println("Database connected successfully");
+    }
+
+    private Handle openWriter() throws SQLException {
+        Connection c = DriverManager.getConnection(url);
+        try (Statement st = c.createStatement()) {
+            // readers don't block the writer; commits don't wait for a full fsync
+            st.execute("PRAGMA journal_mode=WAL");
+            st.execute("PRAGMA synchronous=NORMAL");
+            st.execute("PRAGMA busy_timeout=5000");
+        }
+        createTables(c);
+        c.setAutoCommit(false);
+        return new Handle(c);
+    }
+
+    private Handle openReader() throws SQLException {
+        Connection c = DriverManager.getConnection(url);
+        try (Statement st = c.createStatement()) {
+            st.execute("PRAGMA query_only=ON");
+            st.execute("PRAGMA busy_timeout=5000");
+        }
+        return new Handle(c);
+    }
+
+    private static void createTables(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
 
             String sql = "CREATE TABLE IF NOT EXISTS transactions (" +
                     "id INTEGER PRIMARY KEY AUTOINCREMENT," +
@@ -45,8 +196,153 @@ public class DBConnection {
 
             st.execute(sql);
 
-        } catch (Exception e) {
+            // budget, migration marker
+            st.execute("CREATE TABLE IF NOT EXISTS settings (key TEXT PRIMARY KEY, value TEXT)");
+
+            // filter and report queries range over these
+            st.execute("CREATE INDEX IF NOT EXISTS idx_transactions_date ON transactions(date)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_transactions_category ON transactions(category)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_transactions_amount ON transactions(amount)");
+        }
+    }
+
+    // ---------------- access ----------------
+
+    /** Runs {@code work} on the writer as one transaction; other writes wait. */
+    public <T> T write(Work<T> work) throws SQLException {
+        writeLock.lock();
+        try {
+            checkOpen();
+            if (!writer.isAlive()) {
+                writer.close();
+                writer = openWriter();
+            }
+
+            Connection c = writer.connection();
+            try {
+                T result = work.run(writer);
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Runs {@code work} on a free reader, waiting for one if all are busy. */
+    public <T> T read(Work<T> work) throws SQLException {
+        checkOpen();
+        Handle h = borrow();
+        try {
+            return work.run(h);
+        } finally {
+            idleReaders.add(h);
+        }
+    }
+
+    private Handle borrow() throws SQLException {
+        Handle h;
+        try {
+            h = idleReaders.poll(BORROW_TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", e);
+        }
+        if (h == null)
+            throw new SQLException("No database connection free after " + BORROW_TIMEOUT_S + " s");
+
+        if (!h.isAlive()) {
+            h.close();
+            try {
+                h = openReader();
+            } catch (SQLException e) {
+                idleReaders.add(h); // keep the slot; the next borrow tries again
+                throw e;
+            }
+        }
+        return h;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed)
+            throw new SQLException("Database is closed");
+    }
+
+    // ---------------- health / shutdown ----------------
+
+    /**
+     * Validates the writer and every idle reader, reopening any that no
+     * longer answer. True if all of them are usable afterwards.
+     */
+    public boolean healthCheck() {
+        if (closed)
+            return false;
+
+        boolean ok = true;
+        writeLock.lock();
+        try {
+            // close() may have run since; don't reopen behind it
+            if (closed)
+                return false;
+            if (!writer.isAlive()) {
+                writer.close();
+                writer = openWriter();
+            }
+        } catch (SQLException e) {
             e.printStackTrace();
+            ok = false;
+        } finally {
+            writeLock.unlock();
+        }
+
+        // readers that are busy right now were checked when handed out
+        for (int i = idleReaders.size(); i > 0 && !closed; i--) {
+            Handle h = idleReaders.poll();
+            if (h == null)
+                break;
+            if (!h.isAlive()) {
+                h.close();
+                try {
+                    h = openReader();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    ok = false;
+                }
+            }
+            idleReaders.add(h);
+        }
+        return ok;
+    }
+
+    /** Stops handing out connections, waits for borrowed ones, then closes everything. */
+    @Override
+    public void close() {
+        closed = true;
+        health.shutdown();
+
+        for (int i = 0; i < readerCount; i++) {
+            try {
+                Handle h = idleReaders.poll(BORROW_TIMEOUT_S, TimeUnit.SECONDS);
+                if (h == null) {
+                    System.out.println("Database reader still busy at shutdown");
+                    break;
+                }
+                h.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        writeLock.lock();
+        try {
+            if (writer != null)
+                writer.close();
+        } finally {
+            writeLock.unlock();
         }
     }
 }
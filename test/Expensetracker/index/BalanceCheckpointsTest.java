@@ -0,0 +1,105 @@
+package Expensetracker.index;
+
+import Expensetracker.model.TransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceCheckpointsTest {
+
+    private static final int N = BalanceCheckpoints.INTERVAL;
+
+    private final SplittableRandom rnd = new SplittableRandom(3);
+
+    @Test
+    void followsAddsAndDeletesAcrossCheckpoints() {
+        TransactionStore st = new TransactionStore();
+        BalanceCheckpoints b = BalanceCheckpoints.of(st);
+        st.addListener(b);
+
+        add(st, 3 * N + 100, true);
+        assertTrue(b.verify());
+        assertThroughMatchesReplay(st, b);
+
+        // either side of each checkpoint, then anywhere
+        for (int row : new int[] { 0, N - 1, N, N + 1, 2 * N - 1, 2 * N, 3 * N - 1, 3 * N })
+            st.remove(row);
+        for (int i = 0; i < 500; i++)
+            st.remove(rnd.nextInt(st.size()));
+        assertTrue(b.verify());
+        assertThroughMatchesReplay(st, b);
+
+        // more rows on top, past the next checkpoint
+        add(st, N, true);
+        st.removeAll(new int[] { 4 * N - 1, 4 * N, 4 * N + 1 });
+        assertTrue(b.verify());
+        assertThroughMatchesReplay(st, b);
+
+        st.compact();
+        assertTrue(b.verify());
+        assertThroughMatchesReplay(st, b);
+    }
+
+    @Test
+    void restoredCheckpointsMatchAReplay() {
+        TransactionStore st = new TransactionStore();
+        add(st, 2 * N + 17, true);
+        BalanceCheckpoints full = BalanceCheckpoints.of(st);
+
+        BalanceCheckpoints b = BalanceCheckpoints.restore(st, full.checkpoints());
+        assertTrue(b.verify());
+        assertEquals(full.netPaise(), b.netPaise());
+        assertThroughMatchesReplay(st, b);
+    }
+
+    @Test
+    void balanceOnADay() {
+        for (boolean inOrder : new boolean[] { true, false }) {
+            TransactionStore st = new TransactionStore();
+            BalanceCheckpoints b = BalanceCheckpoints.of(st);
+            st.addListener(b);
+            add(st, 2 * N + 300, inOrder);
+            for (int i = 0; i < 300; i++)
+                st.remove(rnd.nextInt(st.size()));
+
+            int first = st.epochDay(0), last = st.epochDay(st.size() - 1);
+            for (int day = Math.min(first, last) - 1; day <= Math.max(first, last) + 1; day += 7)
+                assertEquals(replayOn(st, day), b.netPaiseOn(day), "day " + day + ", in order " + inOrder);
+        }
+    }
+
+    private void add(TransactionStore st, int rows, boolean inOrder) {
+        int day0 = st.size() == 0 ? 19_000 : st.epochDay(st.size() - 1);
+        for (int i = 0; i < rows; i++) {
+            int day = inOrder ? day0 + i / 20 : 19_000 + rnd.nextInt(400);
+            String type = rnd.nextInt(5) == 0 ? "Credit" : "Debit";
+            st.add(day, "Food", type, "UPI", 1 + rnd.nextLong(1_000_000), new byte[0], 0, 0);
+        }
+    }
+
+    private static void assertThroughMatchesReplay(TransactionStore st, BalanceCheckpoints b) {
+        long net = 0;
+        for (int row = 0; row < st.size(); row++) {
+            net += value(st, row);
+            assertEquals(net, b.netPaiseThrough(row), "row " + row);
+        }
+        assertEquals(net, b.netPaise());
+    }
+
+    private static long replayOn(TransactionStore st, int day) {
+        long net = 0;
+        for (int row = 0; row < st.size(); row++)
+            if (st.epochDay(row) <= day)
+                net += value(st, row);
+        return net;
+    }
+
+    private static long value(TransactionStore st, int row) {
+        if (st.isDeleted(row))
+            return 0;
+        return st.isCredit(row) ? st.amountPaise(row) : -st.amountPaise(row);
+    }
+}
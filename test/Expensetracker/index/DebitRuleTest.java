@@ -0,0 +1,60 @@
+package Expensetracker.index;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DebitRuleTest {
+
+    private static final String[] TYPES = { "Debit", "Credit", "Refund" };
+
+    @Test
+    void categoryTotalsAndRollupsCountTheSameDebits() {
+        TransactionStore st = new TransactionStore();
+        CategoryTotals totals = new CategoryTotals();
+        TimeRollups rollups = new TimeRollups();
+        st.addListener(totals);
+        st.addListener(rollups);
+
+        SplittableRandom rnd = new SplittableRandom(7);
+        long debits = 0, credits = 0;
+        for (int i = 0; i < 5_000; i++) {
+            String type = TYPES[rnd.nextInt(TYPES.length)];
+            long paise = 1 + rnd.nextLong(100_000);
+            if (type.equals("Debit"))
+                debits += paise;
+            else if (type.equals("Credit"))
+                credits += paise;
+            st.add(19_000 + i / 10, "Food", type, "Cash", paise, new byte[0], 0, 0);
+        }
+
+        assertEquals(debits, totals.totalDebitPaise());
+        assertEquals(credits, totals.totalCreditPaise());
+        assertEquals(debits, rolledUp(rollups));
+
+        // the full recomputations go through Aggregation and must agree
+        assertTrue(totals.sameAs(CategoryTotals.of(st)));
+        assertEquals(debits, rolledUp(TimeRollups.of(st)));
+    }
+
+    @Test
+    void onlyDebitIsADebit() {
+        int refund = Symbols.TYPES.code("Refund");
+        assertTrue(Symbols.isDebit(Symbols.DEBIT));
+        assertTrue(Symbols.isCredit(Symbols.CREDIT));
+        assertTrue(!Symbols.isDebit(refund) && !Symbols.isCredit(refund));
+    }
+
+    private static long rolledUp(TimeRollups r) {
+        long sum = 0;
+        for (int c = 0; c < r.categoryCount(TimeRollups.Granularity.YEAR); c++)
+            for (long[] cell : r.series(TimeRollups.Granularity.YEAR, c).values())
+                sum += cell[0];
+        return sum;
+    }
+}
@@ -0,0 +1,155 @@
+package Expensetracker.index;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FilterEngineTest {
+
+    private static final String[] CATEGORIES = { "Food", "Transport", "Bills" };
+    private static final String[] NOTES = { "swiggy order", "uber ride", "rent", "airtel bill", "" };
+
+    private final SplittableRandom rnd = new SplittableRandom(11);
+
+    @Test
+    void queriesMatchAScanOfEveryRow() {
+        TransactionStore st = store(3_000);
+        FilterEngine engine = new FilterEngine(st);
+        st.addListener(engine);
+        deleteSome(st, 200);
+
+        for (FilterEngine.Query q : queries())
+            assertArrayEquals(scan(engine, st, q), engine.run(q));
+    }
+
+    @Test
+    void snapshotIgnoresLaterChanges() {
+        TransactionStore st = store(3_000);
+        FilterEngine engine = new FilterEngine(st);
+        st.addListener(engine);
+
+        for (FilterEngine.Query q : queries()) {
+            int[] want = scan(engine, st, q);
+            FilterEngine.Snapshot snap = engine.snapshot(q);
+
+            // the FX thread carries on while the worker would be searching
+            add(st, 500);
+            deleteSome(st, 300);
+            st.compact();
+            add(st, 100);
+
+            assertArrayEquals(want, engine.run(snap, () -> false));
+            assertNotEquals(st.version(), snap.version());
+        }
+    }
+
+    @Test
+    void refinesOnlyAtTheSameVersion() {
+        TransactionStore st = store(1_000);
+        FilterEngine engine = new FilterEngine(st);
+        st.addListener(engine);
+
+        FilterEngine.Query wide = query(-1, "ub");
+        FilterEngine.Query narrow = query(-1, "uber");
+        engine.run(wide);
+        add(st, 50); // the cached answer for "ub" is now out of date
+        assertArrayEquals(scan(engine, st, narrow), engine.run(narrow));
+    }
+
+    // as a snapshot search builds it: off the lock from the rows as they
+    // were, then taken over with the rows added in the meantime
+    @Test
+    void noteIndexBuiltFromASnapshotCatchesUp() {
+        TransactionStore st = store(2_000);
+        TrigramIndex.Built built = TrigramIndex.build(st.snapshot());
+        add(st, 300);
+
+        TrigramIndex adopted = new TrigramIndex(st);
+        adopted.adopt(built);
+        TrigramIndex fresh = new TrigramIndex(st);
+        for (String note : new String[] { "uber", "order", "airtel bill", "ren" })
+            assertArrayEquals(fresh.candidates(note), adopted.candidates(note));
+    }
+
+    // rows added after the engine, in and out of key order, with queries in
+    // between and none at all across a batch, as an import or replay does
+    @Test
+    void addedRowsAreMergedIntoTheIndexes() {
+        TransactionStore st = new TransactionStore();
+        FilterEngine engine = new FilterEngine(st);
+        st.addListener(engine);
+
+        for (int i = 0; i < 500; i++)
+            st.add(19_000 + i, "Food", "Debit", "UPI", 100 + i, new byte[0], 0, 0);
+        check(engine, st);
+
+        add(st, 2_000);
+        check(engine, st);
+
+        for (int i = 0; i < 300; i++) {
+            st.add(19_500 + i / 3, "Bills", "Debit", "Cash", 60_000 + i, new byte[0], 0, 0);
+            if (i % 100 == 0)
+                check(engine, st);
+        }
+        deleteSome(st, 100);
+        st.compact();
+        add(st, 200);
+        check(engine, st);
+    }
+
+    private void check(FilterEngine engine, TransactionStore st) {
+        for (FilterEngine.Query q : queries())
+            assertArrayEquals(scan(engine, st, q), engine.run(q));
+        for (int from = 18_990; from < 19_700; from += 37) {
+            FilterEngine.Query q = new FilterEngine.Query(-1, null, from, from + 20, 500, 40_000);
+            assertArrayEquals(scan(engine, st, q), engine.run(q));
+        }
+    }
+
+    private FilterEngine.Query[] queries() {
+        int food = Symbols.CATEGORIES.code("Food");
+        return new FilterEngine.Query[] {
+                FilterEngine.Query.all(),
+                query(food, null),
+                query(-1, "uber"),
+                query(food, "order"),
+                new FilterEngine.Query(-1, null, 19_100, 19_200, Long.MIN_VALUE, Long.MAX_VALUE),
+                new FilterEngine.Query(-1, null, Integer.MIN_VALUE, Integer.MAX_VALUE, 10_000, 20_000),
+        };
+    }
+
+    private static FilterEngine.Query query(int category, String note) {
+        return new FilterEngine.Query(category, note,
+                Integer.MIN_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static int[] scan(FilterEngine engine, TransactionStore st, FilterEngine.Query q) {
+        return IntStream.range(0, st.size()).filter(row -> engine.matches(q, row)).toArray();
+    }
+
+    private TransactionStore store(int rows) {
+        TransactionStore st = new TransactionStore();
+        add(st, rows);
+        return st;
+    }
+
+    private void add(TransactionStore st, int rows) {
+        for (int i = 0; i < rows; i++) {
+            byte[] note = NOTES[rnd.nextInt(NOTES.length)].getBytes(StandardCharsets.UTF_8);
+            st.add(19_000 + rnd.nextInt(400), CATEGORIES[rnd.nextInt(CATEGORIES.length)],
+                    "Debit", "UPI", 100 + rnd.nextLong(50_000), note, 0, note.length);
+        }
+    }
+
+    private void deleteSome(TransactionStore st, int rows) {
+        for (int i = 0; i < rows; i++)
+            st.remove(rnd.nextInt(st.size()));
+    }
+}
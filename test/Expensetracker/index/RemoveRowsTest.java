@@ -0,0 +1,58 @@
+package Expensetracker.index;
+
+import Expensetracker.model.TransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoveRowsTest {
+
+    private static final String[] TYPES = { "Debit", "Credit", "Refund" };
+    private static final String[] CATEGORIES = { "Food", "Bills", "Transport" };
+
+    // as in paged mode: totals from daily sums, then deleted rows handed over
+    // in a store of their own that the totals never followed
+    @Test
+    void removedRowsLeaveTheSameTotalsAsARecount() {
+        SplittableRandom rnd = new SplittableRandom(11);
+        TransactionStore ledger = new TransactionStore();
+        for (int i = 0; i < 2_000; i++)
+            ledger.add(19_000 + i / 7, CATEGORIES[rnd.nextInt(CATEGORIES.length)],
+                    TYPES[rnd.nextInt(TYPES.length)], "Cash", 1 + rnd.nextLong(100_000),
+                    new byte[0], 0, 0);
+
+        Aggregation.Groups days = Aggregation.run(ledger, TimeRollups.Granularity.DAY, null);
+        CategoryTotals totals = new CategoryTotals();
+        totals.add(days);
+        TimeRollups rollups = new TimeRollups();
+        rollups.add(days);
+
+        TransactionStore gone = new TransactionStore();
+        for (int r = 0; r < ledger.size(); r += 3)
+            gone.add(ledger.id(r), ledger.epochDay(r), ledger.category(r), ledger.type(r),
+                    ledger.method(r), ledger.amountPaise(r), new byte[0], 0, 0);
+        for (int r = 0; r < ledger.size(); r += 3)
+            ledger.remove(r);
+
+        totals.removeRows(gone);
+        rollups.removeRows(gone);
+
+        assertTrue(totals.sameAs(CategoryTotals.of(ledger)));
+        TimeRollups recount = TimeRollups.of(ledger);
+        for (TimeRollups.Granularity g : TimeRollups.Granularity.values())
+            for (int c = 0; c < recount.categoryCount(g); c++)
+                assertSameSeries(recount.series(g, c), rollups.series(g, c));
+    }
+
+    private static void assertSameSeries(NavigableMap<Integer, long[]> expected,
+            NavigableMap<Integer, long[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Integer bucket : expected.keySet())
+            assertArrayEquals(expected.get(bucket), actual.get(bucket));
+    }
+}
@@ -0,0 +1,169 @@
+package Expensetracker.storage;
+
+import Expensetracker.model.Symbols;
+import Expensetracker.model.TransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvLedgerReaderTest {
+
+    private static final int ROWS = 20_000;
+
+    private static final String[] MALFORMED = {
+            "2024-13-01,Food,Debit,Cash,10.00,bad month",
+            "2024-02-30,Food,Debit,Cash,10.00,no such day",
+            "01-02-2024,Food,Debit,Cash,10.00,wrong layout",
+            "2024-01-05,Food,Debit,Cash,ten,bad amount",
+            "2024-01-05,Food,Debit,Cash",
+            "garbage",
+    };
+
+    private static final String[] CATEGORIES = { "Food", "Bills", "Transport", "General" };
+    private static final String[] TYPES = { "Debit", "Debit", "Credit", "Refund" };
+    private static final String[] NOTES = { "Swiggy", "Uber ride", "rent, march", "", "Airtel ref 42" };
+
+    @TempDir
+    Path dir;
+
+    private long threshold;
+    private int chunk;
+
+    @BeforeEach
+    void splitSmallFiles() {
+        threshold = CsvLedgerReader.parallelThreshold;
+        chunk = CsvLedgerReader.chunkBytes;
+        // a 1 MB ledger in 4 KB pieces: a couple of hundred chunks
+        CsvLedgerReader.parallelThreshold = 0;
+        CsvLedgerReader.chunkBytes = 4096;
+    }
+
+    @AfterEach
+    void restore() {
+        CsvLedgerReader.parallelThreshold = threshold;
+        CsvLedgerReader.chunkBytes = chunk;
+    }
+
+    @Test
+    void parallelLoadMatchesSequential() throws IOException {
+        Path csv = ledger();
+
+        CsvLedgerReader.Result seq = CsvLedgerReader.readSequential(csv);
+        CsvLedgerReader.Result par = CsvLedgerReader.readParallel(csv);
+
+        assertEquals(ROWS, seq.store.size());
+        assertEquals(malformed(), seq.skipped);
+        assertSame(seq, par);
+    }
+
+    @Test
+    void readSplitsOnceOverTheThreshold() throws IOException {
+        Path csv = ledger();
+        CsvLedgerReader.parallelThreshold = Files.size(csv);
+
+        assertSame(CsvLedgerReader.readSequential(csv), CsvLedgerReader.read(csv));
+    }
+
+    // the symbol columns are coded from the line bytes, including values
+    // never seen before and ones that are not ASCII
+    @Test
+    void symbolsAreCodedFromTheBytes() throws IOException {
+        Path csv = dir.resolve("symbols.csv");
+        Files.write(csv, List.of(
+                "Date,Category,Type,Method,Amount,Note",
+                "2024-01-01,Food,Debit,UPI,1.00,",
+                "2024-01-02,Café,Debit,UPI,2.00,",
+                "2024-01-03,Food,Refund,Card,3.00,",
+                "2024-01-04,Café,Credit,Card,4.00,x"));
+
+        TransactionStore st = CsvLedgerReader.readSequential(csv).store;
+        assertEquals(List.of("Food", "Café", "Food", "Café"),
+                List.of(st.category(0), st.category(1), st.category(2), st.category(3)));
+        assertEquals(List.of("Debit", "Debit", "Refund", "Credit"),
+                List.of(st.type(0), st.type(1), st.type(2), st.type(3)));
+        assertEquals(List.of("UPI", "UPI", "Card", "Card"),
+                List.of(st.method(0), st.method(1), st.method(2), st.method(3)));
+        assertEquals(Symbols.CATEGORIES.code("Café"), st.categoryCode(1));
+    }
+
+    @Test
+    void emptyAndMissingFiles() throws IOException {
+        Path empty = Files.createFile(dir.resolve("empty.csv"));
+        Path missing = dir.resolve("missing.csv");
+
+        for (Path csv : new Path[] { empty, missing }) {
+            CsvLedgerReader.Result r = CsvLedgerReader.readParallel(csv);
+            assertEquals(0, r.store.size());
+            assertEquals(0, r.skipped);
+            assertTrue(!r.hasBudget);
+        }
+    }
+
+    // A random ledger in date order, with malformed rows and CRLF line ends
+    // scattered through it, so some land on chunk boundaries
+    private Path ledger() throws IOException {
+        SplittableRandom rnd = new SplittableRandom(42);
+        List<String> lines = new ArrayList<>(ROWS + 2);
+        lines.add("BUDGET,50000.0");
+        lines.add("Date,Category,Type,Method,Amount,Note");
+        for (int i = 0; i < ROWS; i++) {
+            lines.add(LocalDate.of(2020, 1, 1).plusDays(i / 10) + ","
+                    + CATEGORIES[rnd.nextInt(CATEGORIES.length)] + ","
+                    + TYPES[rnd.nextInt(TYPES.length)] + ","
+                    + (rnd.nextBoolean() ? "Cash" : "UPI") + ","
+                    + rnd.nextInt(20_000) + "." + rnd.nextInt(10) + rnd.nextInt(10) + ","
+                    + NOTES[rnd.nextInt(NOTES.length)]);
+        }
+
+        List<String> out = new ArrayList<>(lines.size() + malformed());
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 2 && i % 997 == 0)
+                out.add(MALFORMED[i % MALFORMED.length]);
+            out.add(i % 7 == 0 ? lines.get(i) + "\r" : lines.get(i));
+        }
+        Path csv = dir.resolve("expenses.csv");
+        Files.write(csv, out);
+        return csv;
+    }
+
+    private static int malformed() {
+        // header and budget lines are 0 and 1, rows follow
+        int n = 0;
+        for (int i = 3; i < ROWS + 2; i++)
+            if (i % 997 == 0)
+                n++;
+        return n;
+    }
+
+    private static void assertSame(CsvLedgerReader.Result want, CsvLedgerReader.Result got) {
+        assertEquals(want.hasBudget, got.hasBudget);
+        assertEquals(want.budget, got.budget);
+        assertEquals(want.skipped, got.skipped);
+        assertEquals(want.balance, got.balance);
+        assertEquals(want.balances.netPaise(), got.balances.netPaise());
+
+        TransactionStore a = want.store, b = got.store;
+        assertEquals(a.size(), b.size());
+        for (int r = 0; r < a.size(); r++) {
+            assertEquals(a.id(r), b.id(r), "id of row " + r);
+            assertEquals(a.epochDay(r), b.epochDay(r), "date of row " + r);
+            assertEquals(a.category(r), b.category(r), "category of row " + r);
+            assertEquals(a.type(r), b.type(r), "type of row " + r);
+            assertEquals(a.method(r), b.method(r), "method of row " + r);
+            assertEquals(a.amountPaise(r), b.amountPaise(r), "amount of row " + r);
+            assertEquals(a.note(r), b.note(r), "note of row " + r);
+        }
+    }
+}
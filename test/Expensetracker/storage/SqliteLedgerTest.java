@@ -0,0 +1,103 @@
+package Expensetracker.storage;
+
+import Expensetracker.index.BalanceCheckpoints;
+import Expensetracker.index.CategoryTotals;
+import Expensetracker.index.FilterEngine;
+import Expensetracker.model.Transaction;
+import Expensetracker.model.TransactionStore;
+import Expensetracker.util.DBConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SqliteLedgerTest {
+
+    @TempDir
+    Path dir;
+
+    private DBConnection db;
+    private SqliteLedger ledger;
+    private final TransactionStore store = new TransactionStore();
+
+    @BeforeEach
+    void open() throws SQLException {
+        db = new DBConnection(dir.resolve("expenses.db"), 2);
+        ledger = new SqliteLedger(db);
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    @Test
+    void failedFlushKeepsTheChangesForTheNextOne() throws Exception {
+        add(3);
+        ledger.flush();
+        long[] first = { store.id(0) };
+
+        add(2);
+        ledger.appendRemove(first);
+        try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("expenses.db"));
+                Statement st = other.createStatement()) {
+            // another process holds the write lock past the busy timeout
+            st.execute("BEGIN IMMEDIATE");
+            assertThrows(IOException.class, ledger::flush);
+            st.execute("ROLLBACK");
+        }
+        assertEquals(3, ledger.count(FilterEngine.Query.all()));
+
+        // queued behind the failed ones, and must stay behind them
+        add(1);
+        ledger.flush();
+
+        CsvLedgerReader.Result r = ledger.load();
+        assertEquals(5, r.store.size());
+        for (int row = 0; row < r.store.size(); row++)
+            assertEquals(store.id(row + 1), r.store.id(row));
+    }
+
+    // paged mode takes the balance from totals the database sums; CSV mode
+    // from the checkpoints over the loaded rows. "Refund" is neither debit
+    // nor credit and must count against both the same way
+    @Test
+    void pagedBalanceMatchesTheLoadedBalance() throws Exception {
+        String[] types = { "Debit", "Credit", "Refund" };
+        for (int i = 0; i < 30; i++) {
+            Transaction t = new Transaction(LocalDate.of(2024, 1, 1 + i % 28),
+                    i % 2 == 0 ? "Food" : "Bills", types[i % 3], "Cash", 12.5 + i, "");
+            store.add(t);
+            ledger.appendAdd(t);
+        }
+        ledger.flush();
+
+        CategoryTotals paged = new CategoryTotals();
+        paged.add(ledger.dailyTotals());
+
+        long loaded = BalanceCheckpoints.of(store).netPaise();
+        assertEquals(loaded, paged.netPaise());
+        assertEquals(loaded, CategoryTotals.of(store).netPaise());
+        assertEquals(loaded, ledger.load().balances.netPaise());
+    }
+
+    private void add(int n) {
+        for (int i = 0; i < n; i++) {
+            Transaction t = new Transaction(LocalDate.of(2024, 1, 1 + store.size()),
+                    "Food", "Debit", "UPI", 10 + store.size(), "row " + store.size());
+            store.add(t);
+            ledger.appendAdd(t);
+        }
+    }
+}